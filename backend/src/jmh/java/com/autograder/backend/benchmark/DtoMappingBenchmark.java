@@ -0,0 +1,90 @@
+package com.autograder.backend.benchmark;
+
+import com.autograder.backend.dto.GradingJobMapper;
+import com.autograder.backend.dto.GradingJobResponseDto;
+import com.autograder.backend.entity.GradingJob;
+import com.autograder.backend.entity.GradingResult;
+import com.autograder.backend.entity.Submission;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GradingJobMapper's entity → DTO mapping, and the full job-status response body
+ * (mapping plus Jackson serialization, with the stored pipeline result embedded raw).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class DtoMappingBenchmark {
+
+    @Param({"10"})
+    public int zones;
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    private GradingJob job;
+    private GradingResult result;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Submission submission = new Submission();
+        submission.setId(7L);
+
+        List<Map<String, Object>> perZone = new ArrayList<>();
+        for (int z = 0; z < zones; z++) {
+            Map<String, Object> zone = new LinkedHashMap<>();
+            zone.put("student_id", "STUDENT_7");
+            zone.put("zone_id", "Q" + (z + 1));
+            zone.put("score", 4.0);
+            zone.put("max_score", 5.0);
+            zone.put("confidence", 0.9);
+            zone.put("reasoning", "Correct method, arithmetic slip in the last step.");
+            zone.put("concept", "derivatives");
+            perZone.add(zone);
+        }
+        String resultJson = objectMapper.writeValueAsString(Map.of("zones_graded", zones, "per_zone_scores", perZone));
+
+        LocalDateTime now = LocalDateTime.now();
+        job = new GradingJob();
+        job.setId(42L);
+        job.setSubmission(submission);
+        job.setStatus(GradingJob.JobStatus.COMPLETED);
+        job.setCreatedAt(now);
+        job.setStartedAt(now);
+        job.setCompletedAt(now);
+        job.setResultJson(resultJson);
+
+        result = new GradingResult();
+        result.setId(1L);
+        result.setJob(job);
+        result.setScore(40.0);
+        result.setMaxScore(50.0);
+        result.setConfidenceScore(0.9);
+        result.setFeedbackJson(objectMapper.writeValueAsString(perZone));
+        result.setRequiresReview(false);
+        result.setCreatedAt(now);
+    }
+
+    @Benchmark
+    public GradingJobResponseDto mapJob() {
+        return GradingJobMapper.toJobDto(job);
+    }
+
+    @Benchmark
+    public Object mapResult() {
+        return GradingJobMapper.toResultDto(result);
+    }
+
+    @Benchmark
+    public byte[] jobStatusBody() throws IOException {
+        return objectMapper.writeValueAsBytes(GradingJobMapper.toJobDto(job));
+    }
+}
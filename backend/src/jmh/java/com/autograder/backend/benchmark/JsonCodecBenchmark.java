@@ -0,0 +1,107 @@
+package com.autograder.backend.benchmark;
+
+import com.autograder.backend.dto.VisionGradeResponseDto;
+import com.autograder.backend.dto.ZoneCropResponseDto;
+import com.autograder.backend.service.ZoneCropResponseDecoder;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON (de)serialization on the orchestration path.
+ *
+ * - decodeCropsIncremental: the crop-zones body fed to ZoneCropResponseDecoder in
+ *   network-sized chunks, base64 decoded straight to byte arrays
+ * - decodeCropsAsMap: the same body bound to a Map, as the client did before
+ * - encodeGradingRequest / decodeGradingResponse: one /api/grade/vision exchange
+ * - decodeGradingResponseAsMap: the same response bound to a Map, as the client did before
+ *
+ * {@code mapper=blackbird} registers the Blackbird module the application uses;
+ * {@code plain} is a bare ObjectMapper (reflection-based property access).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class JsonCodecBenchmark {
+
+    private static final TypeReference<Map<String, Object>> JSON_OBJECT = new TypeReference<>() {};
+    private static final int CHUNK_BYTES = 16 * 1024;
+
+    @Param({"10"})
+    public int zones;
+
+    @Param({"20000"})
+    public int cropBytes;
+
+    @Param({"plain", "blackbird"})
+    public String mapper;
+
+    private ObjectMapper objectMapper;
+    private ZoneCropResponseDecoder decoder;
+    private List<byte[]> cropChunks;
+    private byte[] cropBody;
+    private byte[] gradingBody;
+    private Map<String, Object> gradingRequest;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        objectMapper = new ObjectMapper();
+        if ("blackbird".equals(mapper)) {
+            objectMapper.registerModule(new BlackbirdModule());
+        }
+        decoder = new ZoneCropResponseDecoder(objectMapper);
+        cropBody = StubMLServer.cropResponse(zones, cropBytes);
+        cropChunks = new ArrayList<>();
+        for (int offset = 0; offset < cropBody.length; offset += CHUNK_BYTES) {
+            cropChunks.add(Arrays.copyOfRange(cropBody, offset, Math.min(cropBody.length, offset + CHUNK_BYTES)));
+        }
+        gradingBody = StubMLServer.visionResponse();
+
+        byte[] crop = new byte[cropBytes];
+        new Random(7).nextBytes(crop);
+        gradingRequest = Map.of(
+                "student_image_b64", crop,
+                "reference_image_b64", crop,
+                "reference_solution", "Instructor solution provided in image.",
+                "rubric_text", "rubric",
+                "question_text", "Zone Q1");
+    }
+
+    @Benchmark
+    public ZoneCropResponseDto decodeCropsIncremental() {
+        Flux<DataBuffer> body = Flux.fromIterable(cropChunks).map(DefaultDataBufferFactory.sharedInstance::wrap);
+        return decoder.decode(body).block();
+    }
+
+    @Benchmark
+    public Map<String, Object> decodeCropsAsMap() throws IOException {
+        return objectMapper.readValue(cropBody, JSON_OBJECT);
+    }
+
+    @Benchmark
+    public byte[] encodeGradingRequest() throws IOException {
+        return objectMapper.writeValueAsBytes(gradingRequest);
+    }
+
+    @Benchmark
+    public VisionGradeResponseDto decodeGradingResponse() throws IOException {
+        return objectMapper.readValue(gradingBody, VisionGradeResponseDto.class);
+    }
+
+    @Benchmark
+    public Map<String, Object> decodeGradingResponseAsMap() throws IOException {
+        return objectMapper.readValue(gradingBody, JSON_OBJECT);
+    }
+}
@@ -0,0 +1,91 @@
+package com.autograder.backend.benchmark;
+
+import com.autograder.backend.dto.AnalyticsSummaryDto;
+import com.autograder.backend.dto.VisionGradeResponseDto;
+import com.autograder.backend.dto.ZoneCropResponseDto;
+import com.autograder.backend.dto.ZoneGradeDto;
+import com.autograder.backend.service.MLServiceClient;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MLServiceClient round trips against the in-process StubMLServer.
+ *
+ * cropZones covers multipart body construction, streaming the two uploads and
+ * incrementally decoding the crop map; the stub answers instantly, so the score is
+ * the client-side cost of the orchestration path. Compare with
+ * JsonCodecBenchmark.decodeCropsIncremental to separate upload from decode.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class MLServiceClientBenchmark {
+
+    @Param({"10"})
+    public int zones;
+
+    @Param({"20000"})
+    public int cropBytes;
+
+    @Param({"1000000"})
+    public int uploadBytes;
+
+    private StubMLServer stub;
+    private MLServiceClient client;
+    private Resource template;
+    private Resource student;
+    private byte[] crop;
+    private List<ZoneGradeDto> results;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        stub = new StubMLServer(zones, cropBytes, 0, 0);
+        client = stub.client();
+        template = upload("template.png", uploadBytes, 1);
+        student = upload("student.png", uploadBytes, 2);
+        crop = new byte[cropBytes];
+        new Random(3).nextBytes(crop);
+        results = List.of(zoneResult("Q1"), zoneResult("Q2"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        stub.close();
+    }
+
+    @Benchmark
+    public ZoneCropResponseDto cropZones() {
+        return client.cropZones(template, student);
+    }
+
+    @Benchmark
+    public VisionGradeResponseDto gradeSingleZone() {
+        return client.gradeSingleZone("STUDENT_001", "Q1", crop, crop, "rubric");
+    }
+
+    @Benchmark
+    public AnalyticsSummaryDto analytics() {
+        return client.getAnalytics(results);
+    }
+
+    static Resource upload(String name, int size, long seed) {
+        byte[] bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        return new ByteArrayResource(bytes) {
+            @Override
+            public String getFilename() {
+                return name;
+            }
+        };
+    }
+
+    private static ZoneGradeDto zoneResult(String zoneId) {
+        return new ZoneGradeDto("STUDENT_001", zoneId, 4.0, 5.0, 0.9, "stub", "derivatives");
+    }
+}
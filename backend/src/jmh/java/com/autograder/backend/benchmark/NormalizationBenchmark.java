@@ -0,0 +1,40 @@
+package com.autograder.backend.benchmark;
+
+import com.autograder.backend.dto.VisionGradeResponseDto;
+import com.autograder.backend.service.ZoneGradingExecutor;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mapping grading-engine responses onto the analytics shape (ZoneGradingExecutor.normalize)
+ * for every zone of a paper.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class NormalizationBenchmark {
+
+    @Param({"10", "50"})
+    public int zones;
+
+    private Map<String, VisionGradeResponseDto> responses;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        responses = new LinkedHashMap<>();
+        for (int z = 0; z < zones; z++) {
+            responses.put("Q" + (z + 1), new VisionGradeResponseDto(
+                    4.0, 5.0, 0.9, "Correct method, arithmetic slip in the last step.", "derivatives"));
+        }
+    }
+
+    @Benchmark
+    public void normalizePaper(Blackhole blackhole) {
+        responses.forEach((zoneId, response) ->
+                blackhole.consume(ZoneGradingExecutor.normalize("STUDENT_001", zoneId, response)));
+    }
+}
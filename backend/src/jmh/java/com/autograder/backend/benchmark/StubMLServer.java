@@ -0,0 +1,223 @@
+package com.autograder.backend.benchmark;
+
+import com.autograder.backend.service.MLServiceClient;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process stand-in for the OCR, grading and analytics services.
+ *
+ * Serves the four endpoints MLServiceClient calls on one loopback port with canned
+ * responses shaped like the real services. Request bodies are read fully (so upload
+ * cost is paid) and discarded. Latency, error rate and crop payload size are
+ * configurable so callers can inject slow or failing dependencies. By default every
+ * crop-zones call returns the same crops; with {@code uniqueCrops} each call returns
+ * fresh ones, so nothing keyed on crop content (the zone result cache) can hit.
+ */
+public class StubMLServer implements AutoCloseable {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final HttpServer server;
+    private final ExecutorService handlers;
+    private final byte[] cropResponse;
+    private final int zones;
+    private final int cropBytes;
+    private final boolean uniqueCrops;
+    private final AtomicLong cropSeed = new AtomicLong(42);
+    private final byte[] visionResponse;
+    private final byte[] analyticsResponse;
+    private final long latencyMs;
+    private final double errorRate;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    /**
+     * @param zones     crops returned per crop-zones call
+     * @param cropBytes size of each (random, incompressible) crop before base64
+     * @param latencyMs delay added to every response
+     * @param errorRate fraction of calls answered with HTTP 503, 0..1
+     */
+    public StubMLServer(int zones, int cropBytes, long latencyMs, double errorRate) throws IOException {
+        this(zones, cropBytes, latencyMs, errorRate, false);
+    }
+
+    /**
+     * @param uniqueCrops return different crops from every crop-zones call
+     */
+    public StubMLServer(int zones, int cropBytes, long latencyMs, double errorRate, boolean uniqueCrops) throws IOException {
+        this.zones = zones;
+        this.cropBytes = cropBytes;
+        this.uniqueCrops = uniqueCrops;
+        this.latencyMs = latencyMs;
+        this.errorRate = errorRate;
+        this.cropResponse = cropResponse(zones, cropBytes);
+        this.visionResponse = visionResponse();
+        this.analyticsResponse = analyticsResponse();
+
+        this.handlers = Executors.newVirtualThreadPerTaskExecutor();
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        server.setExecutor(handlers);
+        server.createContext("/api/ocr/crop-zones", exchange -> respond(exchange, uniqueCrops
+                ? cropResponse(zones, cropBytes, cropSeed.incrementAndGet())
+                : cropResponse));
+        server.createContext("/api/grade/vision", exchange -> respond(exchange, visionResponse));
+        server.createContext("/api/grade/batch-vision", this::batchVision);
+        server.createContext("/api/analytics/summary", exchange -> respond(exchange, analyticsResponse));
+        server.start();
+    }
+
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public long requests() {
+        return requests.get();
+    }
+
+    public long errors() {
+        return errors.get();
+    }
+
+    /**
+     * An MLServiceClient whose three service URLs point at this stub.
+     */
+    public MLServiceClient client() {
+        MLServiceClient client = new MLServiceClient(WebClient.builder());
+        for (String field : List.of("ocrUrl", "gradingUrl", "analyticsUrl")) {
+            Field url = ReflectionUtils.findField(MLServiceClient.class, field);
+            ReflectionUtils.makeAccessible(url);
+            ReflectionUtils.setField(url, client, baseUrl());
+        }
+        return client;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        handlers.shutdownNow();
+    }
+
+    private void batchVision(HttpExchange exchange) throws IOException {
+        // Left open: respond() drains the rest and closes it
+        JsonNode request = MAPPER.readTree(exchange.getRequestBody().readAllBytes());
+        List<Map<String, Object>> rows = new ArrayList<>();
+        Iterator<String> keys = request.path("zones").fieldNames();
+        while (keys.hasNext()) {
+            rows.add(gradedZone(keys.next()));
+        }
+        respond(exchange, MAPPER.writeValueAsBytes(rows));
+    }
+
+    private void respond(HttpExchange exchange, byte[] body) throws IOException {
+        requests.incrementAndGet();
+        try (InputStream in = exchange.getRequestBody()) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        try {
+            if (latencyMs > 0) {
+                Thread.sleep(latencyMs);
+            }
+            if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                errors.incrementAndGet();
+                byte[] error = "{\"detail\":\"injected failure\"}".getBytes(StandardCharsets.UTF_8);
+                send(exchange, 503, error);
+                return;
+            }
+            send(exchange, 200, body);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            exchange.close();
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static Map<String, Object> gradedZone(String zoneId) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        if (zoneId != null) {
+            row.put("zone_id", zoneId);
+            row.put("score", 4.0);
+            row.put("max_score", 5.0);
+            row.put("confidence", 0.9);
+            row.put("reasoning", "Correct method, arithmetic slip in the last step.");
+            row.put("concept", "derivatives");
+        } else {
+            row.put("total_score", 4.0);
+            row.put("max_score", 5.0);
+            row.put("overall_confidence", 0.9);
+            row.put("reasoning", "Correct method, arithmetic slip in the last step.");
+            row.put("discovered_concept", "derivatives");
+        }
+        return row;
+    }
+
+    /** A /api/grade/vision response body. */
+    public static byte[] visionResponse() throws IOException {
+        return MAPPER.writeValueAsBytes(gradedZone(null));
+    }
+
+    /** A /api/analytics/summary response body. */
+    public static byte[] analyticsResponse() throws IOException {
+        Map<String, Object> derivatives = new LinkedHashMap<>();
+        derivatives.put("average_score", 80.0);
+        derivatives.put("mastery_level", "Proficient");
+        derivatives.put("common_misconception", "Drops the chain rule on composite functions.");
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("overall_average_pct", 80.0);
+        body.put("concept_breakdown", Map.of("derivatives", derivatives));
+        body.put("top_performers", List.of("STUDENT_001"));
+        body.put("at_risk_students", List.of());
+        body.put("teacher_recommendation", "Review the chain rule before the next unit.");
+        body.put("processing_engine", "stub");
+        return MAPPER.writeValueAsBytes(body);
+    }
+
+    /** A /api/ocr/crop-zones response body with {@code zones} random crops of {@code cropBytes} each. */
+    public static byte[] cropResponse(int zones, int cropBytes) throws IOException {
+        return cropResponse(zones, cropBytes, 42);
+    }
+
+    private static byte[] cropResponse(int zones, int cropBytes, long seed) throws IOException {
+        Random random = new Random(seed);
+        Map<String, byte[]> crops = new LinkedHashMap<>();
+        for (int z = 0; z < zones; z++) {
+            byte[] crop = new byte[cropBytes];
+            random.nextBytes(crop);
+            crops.put("Q" + (z + 1), crop);
+        }
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("crops", crops); // byte[] serializes as base64, like the OCR service
+        body.put("cache_hit", false);
+        body.put("alignment_confidence", 0.97);
+        body.put("total_processing_time", 0.12);
+        return MAPPER.writeValueAsBytes(body);
+    }
+}
@@ -0,0 +1,114 @@
+package com.autograder.backend.benchmark;
+
+import com.autograder.backend.dto.VisionGradeResponseDto;
+import com.autograder.backend.dto.ZoneGradeDto;
+import com.autograder.backend.service.GradingMetrics;
+import com.autograder.backend.service.MLServiceClient;
+import com.autograder.backend.service.TokenBucketRateLimiter;
+import com.autograder.backend.service.ZoneGradingExecutor;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Platform vs virtual threads for the blocking zone fan-out.
+ *
+ * Each invocation starts {@code pipelines} concurrent papers of {@code zones} zones.
+ * Platform mode models Tomcat's default 200 request threads plus a fixed zone pool of
+ * {@code maxInFlight} threads; virtual mode gives every request and every zone its own
+ * virtual thread, with the same in-flight bound.
+ * The grading engine is replaced by a stub that blocks for {@code latencyMs}.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class ZoneFanOutBenchmark {
+
+    private static final int TOMCAT_MAX_THREADS = 200;
+
+    @Param({"platform", "virtual"})
+    public String mode;
+
+    @Param({"1000"})
+    public int pipelines;
+
+    @Param({"10"})
+    public int zones;
+
+    @Param({"50"})
+    public int latencyMs;
+
+    @Param({"1000"})
+    public int maxInFlight;
+
+    private ZoneGradingExecutor executor;
+    private ExecutorService requestThreads;
+    private Map<String, byte[]> crops;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        boolean virtual = "virtual".equals(mode);
+        // Rate limiting is disabled so the benchmark measures the thread model, not the quota guard
+        executor = new ZoneGradingExecutor(new SleepingClient(latencyMs), new TokenBucketRateLimiter(0, 1), null, null,
+                GradingMetrics.noop(), maxInFlight, virtual, 600, false);
+        requestThreads = virtual
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newFixedThreadPool(TOMCAT_MAX_THREADS);
+
+        crops = new LinkedHashMap<>();
+        for (int z = 0; z < zones; z++) {
+            crops.put(String.valueOf((char) ('A' + z)), new byte[]{1});
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        requestThreads.shutdownNow();
+    }
+
+    @Benchmark
+    public int concurrentPipelines() throws Exception {
+        List<Future<List<ZoneGradeDto>>> running = new ArrayList<>(pipelines);
+        for (int p = 0; p < pipelines; p++) {
+            String studentId = "STUDENT_" + p;
+            running.add(requestThreads.submit(() -> executor.gradeZones(studentId, crops, crops, "rubric")));
+        }
+        int graded = 0;
+        for (Future<List<ZoneGradeDto>> pipeline : running) {
+            graded += pipeline.get().size();
+        }
+        return graded;
+    }
+
+    /**
+     * Grading engine stand-in: blocks the calling thread like a real HTTP round trip.
+     */
+    static class SleepingClient extends MLServiceClient {
+
+        private final int latencyMs;
+
+        SleepingClient(int latencyMs) {
+            super(WebClient.builder());
+            this.latencyMs = latencyMs;
+        }
+
+        @Override
+        public VisionGradeResponseDto gradeSingleZone(String studentId, String zoneId, byte[] image,
+                                                      byte[] referenceImage, String rubric) {
+            try {
+                Thread.sleep(latencyMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new VisionGradeResponseDto(1.0, 1.0, 1.0, "stub", "stub");
+        }
+    }
+}
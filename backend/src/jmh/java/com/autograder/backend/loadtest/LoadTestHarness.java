@@ -0,0 +1,378 @@
+package com.autograder.backend.loadtest;
+
+import com.autograder.backend.AutoGraderBackendApplication;
+import com.autograder.backend.benchmark.StubMLServer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * End-to-end load test: boots the full backend in-process against a StubMLServer and
+ * drives /api/grading/run and /api/submissions with an open-loop request rate.
+ *
+ * Requests are launched on a fixed schedule regardless of how many are outstanding, and
+ * latency is measured from the scheduled start, so a backend that falls behind shows up
+ * in the tail instead of silently lowering the offered load.
+ *
+ * Settings are system properties (the Gradle task maps -PloadTest.x=y to them):
+ * - loadtest.rps, loadtest.duration-seconds, loadtest.warmup-seconds
+ * - loadtest.run-share        fraction of requests sent to /api/grading/run (rest: submissions)
+ * - loadtest.upload-bytes     size of each uploaded page
+ * - loadtest.cache-mode       cold (default): every request uploads a distinct student page and the
+ *                             stub returns distinct crops, so upload dedup and the zone result cache
+ *                             miss as they do for real cohorts; template and key stay shared, as in one
+ *                             assignment's deadline burst. warm: every request repeats the same bytes,
+ *                             so every content-keyed cache hits (an upper bound, not a capacity figure)
+ * - loadtest.stub.zones, loadtest.stub.crop-bytes, loadtest.stub.latency-ms, loadtest.stub.error-rate
+ * - loadtest.max-p99-ms, loadtest.max-error-rate   exit non-zero when exceeded (regression gate)
+ * - loadtest.app.*            passed to the backend as application properties
+ *
+ * Heap and thread figures are sampled from this JVM, which hosts both the backend and the
+ * load generator; the generator itself is a handful of threads and short-lived buffers.
+ */
+public class LoadTestHarness {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final double rps = doubleProperty("loadtest.rps", 20);
+    private final int durationSeconds = (int) doubleProperty("loadtest.duration-seconds", 30);
+    private final int warmupSeconds = (int) doubleProperty("loadtest.warmup-seconds", 5);
+    private final double runShare = doubleProperty("loadtest.run-share", 0.5);
+    private final int uploadBytes = (int) doubleProperty("loadtest.upload-bytes", 500_000);
+    private final boolean warmCaches = "warm".equalsIgnoreCase(System.getProperty("loadtest.cache-mode", "cold"));
+    private final double maxP99Ms = doubleProperty("loadtest.max-p99-ms", 0);
+    private final double maxErrorRate = doubleProperty("loadtest.max-error-rate", -1);
+
+    private final Map<String, LatencyRecorder> recorders = new ConcurrentHashMap<>();
+    private final AtomicLong outstanding = new AtomicLong();
+    private final AtomicLong salt = new AtomicLong();
+    private final HttpClient http = HttpClient.newBuilder()
+            .executor(Executors.newVirtualThreadPerTaskExecutor())
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+
+    private String baseUrl;
+    private byte[] page;
+    private HttpRequest runRequest;         // warm mode: immutable, so one instance is reused for every call
+    private HttpRequest submissionRequest;
+    private long assignmentId;
+    private long studentId;
+    private long peakHeapBytes;
+    private int peakThreads;
+
+    public static void main(String[] args) throws Exception {
+        boolean passed = new LoadTestHarness().run();
+        System.exit(passed ? 0 : 1);
+    }
+
+    boolean run() throws Exception {
+        Path uploads = Files.createTempDirectory("loadtest-uploads-");
+        try (StubMLServer stub = new StubMLServer(
+                (int) doubleProperty("loadtest.stub.zones", 6),
+                (int) doubleProperty("loadtest.stub.crop-bytes", 20_000),
+                (long) doubleProperty("loadtest.stub.latency-ms", 200),
+                doubleProperty("loadtest.stub.error-rate", 0),
+                !warmCaches);
+             ConfigurableApplicationContext app = startBackend(stub, uploads)) {
+
+            baseUrl = "http://127.0.0.1:" + ((WebServerApplicationContext) app).getWebServer().getPort();
+            page = new byte[Math.max(Long.BYTES, uploadBytes)];
+            new Random(1).nextBytes(page);
+            seed();
+            runRequest = runRequest(page);
+            submissionRequest = submissionRequest(page);
+
+            ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+            sampler.scheduleAtFixedRate(this::sampleResources, 0, 500, TimeUnit.MILLISECONDS);
+            try {
+                drive(warmupSeconds, false);
+                resetPeaks();
+                long started = System.nanoTime();
+                drive(durationSeconds, true);
+                awaitOutstanding(Duration.ofSeconds(60));
+                double elapsedSeconds = (System.nanoTime() - started) / 1e9;
+                return report(elapsedSeconds, stub);
+            } finally {
+                sampler.shutdownNow();
+            }
+        }
+    }
+
+    private ConfigurableApplicationContext startBackend(StubMLServer stub, Path uploads) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("server.port", 0);
+        properties.put("ml-service.ocr.url", stub.baseUrl());
+        properties.put("ml-service.grading.url", stub.baseUrl());
+        properties.put("ml-service.analytics.url", stub.baseUrl());
+        properties.put("file.upload-dir", uploads.toString());
+        // The model quota guard would cap throughput at a few calls a minute
+        properties.put("grading.zone.requests-per-minute", 0);
+        properties.put("logging.level.com.autograder", "WARN");
+        properties.put("logging.level.org.hibernate.SQL", "WARN");
+        System.getProperties().stringPropertyNames().stream()
+                .filter(name -> name.startsWith("loadtest.app."))
+                .forEach(name -> properties.put(name.substring("loadtest.app.".length()), System.getProperty(name)));
+
+        // Passed as command-line arguments so they take precedence over application.properties
+        String[] args = properties.entrySet().stream()
+                .map(property -> "--" + property.getKey() + "=" + property.getValue())
+                .toArray(String[]::new);
+        return new SpringApplication(AutoGraderBackendApplication.class).run(args);
+    }
+
+    private void seed() throws IOException, InterruptedException {
+        assignmentId = postJson("/api/assignments", Map.of("title", "Load test", "totalPoints", 50)).get("id").asLong();
+        studentId = postJson("/api/users", Map.of(
+                "email", "loadtest-" + UUID.randomUUID() + "@example.com",
+                "password", "loadtest",
+                "name", "Load Test",
+                "role", "STUDENT")).get("id").asLong();
+    }
+
+    private JsonNode postJson(String path, Map<String, Object> body) throws IOException, InterruptedException {
+        HttpResponse<String> response = http.send(HttpRequest.newBuilder(URI.create(baseUrl + path))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofByteArray(MAPPER.writeValueAsBytes(body)))
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() / 100 != 2) {
+            throw new IllegalStateException("Seeding " + path + " failed: " + response.statusCode() + " " + response.body());
+        }
+        return MAPPER.readTree(response.body());
+    }
+
+    /**
+     * Launch requests at the target rate for {@code seconds}; only recorded when {@code measure}.
+     */
+    private void drive(int seconds, boolean measure) throws InterruptedException {
+        if (seconds <= 0) {
+            return;
+        }
+        long periodNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rps);
+        long total = (long) (rps * seconds);
+        long start = System.nanoTime();
+        for (long i = 0; i < total; i++) {
+            long scheduled = start + i * periodNanos;
+            long wait = scheduled - System.nanoTime();
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            boolean run = ThreadLocalRandom.current().nextDouble() < runShare;
+            fire(run ? "POST /api/grading/run" : "POST /api/submissions", nextRequest(run), scheduled, measure);
+        }
+    }
+
+    private void fire(String endpoint, HttpRequest request, long scheduledNanos, boolean measure) {
+        outstanding.incrementAndGet();
+        http.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, error) -> {
+                    long latency = System.nanoTime() - scheduledNanos;
+                    outstanding.decrementAndGet();
+                    if (measure) {
+                        recorders.computeIfAbsent(endpoint, e -> new LatencyRecorder())
+                                .record(latency, error != null ? -1 : response.statusCode());
+                    }
+                });
+    }
+
+    private HttpRequest nextRequest(boolean run) {
+        if (warmCaches) {
+            return run ? runRequest : submissionRequest;
+        }
+        // Cold: stamp a counter into a copy of the page so no two student uploads are identical
+        byte[] student = page.clone();
+        ByteBuffer.wrap(student, student.length - Long.BYTES, Long.BYTES).putLong(salt.incrementAndGet());
+        return run ? runRequest(student) : submissionRequest(student);
+    }
+
+    private HttpRequest runRequest(byte[] student) {
+        Multipart body = new Multipart()
+                .file("template", "template.png", page)
+                .file("instructor", "instructor.png", page)
+                .file("student", "student.png", student);
+        return body.post(URI.create(baseUrl + "/api/grading/run"));
+    }
+
+    private HttpRequest submissionRequest(byte[] student) {
+        Multipart body = new Multipart()
+                .file("file", "submission.png", student)
+                .field("assignmentId", String.valueOf(assignmentId))
+                .field("studentId", String.valueOf(studentId));
+        return body.post(URI.create(baseUrl + "/api/submissions"));
+    }
+
+    private void awaitOutstanding(Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (outstanding.get() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+    }
+
+    private synchronized void sampleResources() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        peakHeapBytes = Math.max(peakHeapBytes, memory.getHeapMemoryUsage().getUsed());
+        peakThreads = Math.max(peakThreads, threads.getThreadCount());
+    }
+
+    private synchronized void resetPeaks() {
+        peakHeapBytes = 0;
+        peakThreads = 0;
+        ManagementFactory.getThreadMXBean().resetPeakThreadCount();
+    }
+
+    private boolean report(double elapsedSeconds, StubMLServer stub) {
+        System.out.printf("%nLoad test: %.1f rps offered for %ds (warm-up %ds, %s caches), stub ML calls %d (%d injected errors)%n",
+                rps, durationSeconds, warmupSeconds, warmCaches ? "warm" : "cold", stub.requests(), stub.errors());
+        System.out.printf("%-26s %7s %7s %9s %9s %9s %9s %9s%n",
+                "endpoint", "count", "errors", "p50 ms", "p90 ms", "p99 ms", "max ms", "req/s");
+
+        boolean passed = true;
+        for (Map.Entry<String, LatencyRecorder> entry : new TreeMap<>(recorders).entrySet()) {
+            LatencyRecorder recorder = entry.getValue();
+            Map<String, Double> summary = recorder.summary();
+            System.out.printf("%-26s %7d %7d %9.1f %9.1f %9.1f %9.1f %9.1f%n",
+                    entry.getKey(), recorder.count(), recorder.errors(),
+                    summary.get("p50"), summary.get("p90"), summary.get("p99"), summary.get("max"),
+                    recorder.count() / elapsedSeconds);
+            System.out.printf("%-26s status %s%n", "", recorder.statuses());
+
+            if (maxP99Ms > 0 && summary.get("p99") > maxP99Ms) {
+                System.out.printf("FAIL: %s p99 %.1f ms exceeds %.1f ms%n", entry.getKey(), summary.get("p99"), maxP99Ms);
+                passed = false;
+            }
+            double errorRate = recorder.count() == 0 ? 0 : (double) recorder.errors() / recorder.count();
+            if (maxErrorRate >= 0 && errorRate > maxErrorRate) {
+                System.out.printf("FAIL: %s error rate %.3f exceeds %.3f%n", entry.getKey(), errorRate, maxErrorRate);
+                passed = false;
+            }
+        }
+
+        Runtime runtime = Runtime.getRuntime();
+        System.out.printf("heap: peak used %d MB of %d MB max | threads: peak live %d (JVM peak %d)%n",
+                peakHeapBytes / (1024 * 1024), runtime.maxMemory() / (1024 * 1024),
+                peakThreads, ManagementFactory.getThreadMXBean().getPeakThreadCount());
+        return passed;
+    }
+
+    private static double doubleProperty(String name, double defaultValue) {
+        String value = System.getProperty(name);
+        return value != null && !value.isBlank() ? Double.parseDouble(value) : defaultValue;
+    }
+
+    /**
+     * Latencies and status codes for one endpoint. Status -1 is a transport failure.
+     */
+    static final class LatencyRecorder {
+
+        private final List<Long> latencies = new ArrayList<>();
+        private final Map<Integer, Long> statuses = new LinkedHashMap<>();
+        private long errors;
+
+        synchronized void record(long latencyNanos, int status) {
+            latencies.add(latencyNanos);
+            statuses.merge(status, 1L, Long::sum);
+            if (status / 100 != 2) {
+                errors++;
+            }
+        }
+
+        synchronized long count() {
+            return latencies.size();
+        }
+
+        synchronized long errors() {
+            return errors;
+        }
+
+        synchronized Map<Integer, Long> statuses() {
+            return new LinkedHashMap<>(statuses);
+        }
+
+        synchronized Map<String, Double> summary() {
+            long[] sorted = latencies.stream().mapToLong(Long::longValue).toArray();
+            Arrays.sort(sorted);
+            Map<String, Double> summary = new HashMap<>();
+            summary.put("p50", percentileMillis(sorted, 0.50));
+            summary.put("p90", percentileMillis(sorted, 0.90));
+            summary.put("p99", percentileMillis(sorted, 0.99));
+            summary.put("max", sorted.length == 0 ? 0 : sorted[sorted.length - 1] / 1e6);
+            return summary;
+        }
+
+        private static double percentileMillis(long[] sorted, double quantile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(quantile * sorted.length) - 1;
+            return sorted[Math.max(0, index)] / 1e6;
+        }
+    }
+
+    /**
+     * Minimal multipart/form-data body for java.net.http, which has no built-in publisher.
+     */
+    static final class Multipart {
+
+        private final String boundary = "loadtest-" + UUID.randomUUID();
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        Multipart field(String name, String value) {
+            write("--" + boundary + "\r\nContent-Disposition: form-data; name=\"" + name + "\"\r\n\r\n" + value + "\r\n");
+            return this;
+        }
+
+        Multipart file(String name, String filename, byte[] content) {
+            write("--" + boundary + "\r\nContent-Disposition: form-data; name=\"" + name + "\"; filename=\"" + filename
+                    + "\"\r\nContent-Type: image/png\r\n\r\n");
+            body.writeBytes(content);
+            write("\r\n");
+            return this;
+        }
+
+        HttpRequest post(URI uri) {
+            write("--" + boundary + "--\r\n");
+            return HttpRequest.newBuilder(uri)
+                    .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                    .timeout(Duration.ofMinutes(5))
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()))
+                    .build();
+        }
+
+        private void write(String text) {
+            body.writeBytes(text.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
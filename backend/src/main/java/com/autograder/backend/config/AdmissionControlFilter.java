@@ -0,0 +1,142 @@
+package com.autograder.backend.config;
+
+import com.autograder.backend.service.AdmissionControl;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Applies AdmissionControl to the upload endpoints:
+ * - POST /api/submissions and /api/grading/run-async share the grading-queue limit
+ * - POST /api/grading/run, /run-stream and /run-batch share the run limit; a batch takes
+ *   several run permits
+ *
+ * Runs before the DispatcherServlet parses the multipart body, so a refused request is
+ * answered with 429 without reading its upload. The upload permit is held while the
+ * body is received and the handler runs; run permits are held until the async
+ * response completes.
+ */
+@Component
+@RequiredArgsConstructor
+public class AdmissionControlFilter extends OncePerRequestFilter {
+
+    private static final String SUBMISSIONS = "/api/submissions";
+    private static final String RUN = "/api/grading/run";
+    private static final String RUN_ASYNC = "/api/grading/run-async";
+    private static final String RUN_STREAM = "/api/grading/run-stream";
+    private static final String RUN_BATCH = "/api/grading/run-batch";
+
+    private final AdmissionControl admissionControl;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String path = path(request);
+        return !"POST".equals(request.getMethod())
+                || !(SUBMISSIONS.equals(path) || RUN_ASYNC.equals(path) || runPermits(path) > 0);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain chain) throws ServletException, IOException {
+        int runPermits = runPermits(path(request));
+        boolean run = runPermits > 0;
+        if (run ? !admissionControl.tryAcquireRun(runPermits) : !admissionControl.admitJob()) {
+            reject(response, run ? AdmissionControl.Reason.RUNS : AdmissionControl.Reason.QUEUE);
+            return;
+        }
+        if (!admissionControl.tryAcquireUpload()) {
+            if (run) {
+                admissionControl.releaseRun(runPermits);
+            }
+            reject(response, AdmissionControl.Reason.UPLOADS);
+            return;
+        }
+
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            admissionControl.releaseUpload();
+            if (run) {
+                if (request.isAsyncStarted()) {
+                    request.getAsyncContext().addListener(new ReleaseRun(runPermits));
+                } else {
+                    admissionControl.releaseRun(runPermits);
+                }
+            }
+        }
+    }
+
+    private static String path(HttpServletRequest request) {
+        return request.getRequestURI().substring(request.getContextPath().length());
+    }
+
+    /** Run permits the endpoint holds while in flight; 0 for the queueing endpoints. */
+    private int runPermits(String path) {
+        return switch (path) {
+            case RUN, RUN_STREAM -> 1;
+            case RUN_BATCH -> admissionControl.getBatchRunPermits();
+            default -> 0;
+        };
+    }
+
+    private void reject(HttpServletResponse response, AdmissionControl.Reason reason) throws IOException {
+        long seconds = admissionControl.retryAfter(reason).toSeconds();
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(seconds));
+        response.setHeader(HttpHeaders.CONNECTION, "close");  // do not read the refused upload body
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.getWriter().write("{\"error\":\"Server busy (" + reason.name().toLowerCase()
+                + "), retry later.\",\"retryAfterSeconds\":" + seconds + "}");
+    }
+
+    /** Releases the run permits exactly once, whichever way the async request ends. */
+    private class ReleaseRun implements AsyncListener {
+
+        private final int permits;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        ReleaseRun(int permits) {
+            this.permits = permits;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            release();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            release();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            release();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // Re-register for the next async cycle
+            event.getAsyncContext().addListener(this);
+        }
+
+        private void release() {
+            if (released.compareAndSet(false, true)) {
+                admissionControl.releaseRun(permits);
+            }
+        }
+    }
+}
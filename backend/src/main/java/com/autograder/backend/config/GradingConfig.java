@@ -0,0 +1,22 @@
+package com.autograder.backend.config;
+
+import com.autograder.backend.service.TokenBucketRateLimiter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(MLResilienceProperties.class)
+public class GradingConfig {
+
+    /**
+     * Quota guard shared by every call to the grading model (single-zone and batch).
+     */
+    @Bean
+    public TokenBucketRateLimiter gradingRateLimiter(
+            @Value("${grading.zone.requests-per-minute:12}") double requestsPerMinute,
+            @Value("${grading.zone.burst:4}") int burst) {
+        return new TokenBucketRateLimiter(requestsPerMinute, burst);
+    }
+}
@@ -0,0 +1,20 @@
+package com.autograder.backend.config;
+
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class JacksonConfig {
+
+    /**
+     * Generated accessors instead of reflection for record/bean (de)serialization.
+     * Boot registers every Module bean with the shared ObjectMapper, which both the
+     * MVC converters and the WebClient codecs use.
+     */
+    @Bean
+    public Module blackbirdModule() {
+        return new BlackbirdModule();
+    }
+}
@@ -0,0 +1,26 @@
+package com.autograder.backend.config;
+
+import com.autograder.backend.service.ResiliencePolicy;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Per-service resilience settings, bound from {@code ml-service.resilience.<service>.*}.
+ * Each service gets its own bulkhead and circuit breaker so a slow analytics
+ * service cannot take slots from OCR or grading.
+ */
+@Data
+@ConfigurationProperties(prefix = "ml-service.resilience")
+public class MLResilienceProperties {
+
+    private ResiliencePolicy.Settings ocr = new ResiliencePolicy.Settings();
+    private ResiliencePolicy.Settings grading = new ResiliencePolicy.Settings();
+    private ResiliencePolicy.Settings analytics = analyticsDefaults();
+
+    private static ResiliencePolicy.Settings analyticsDefaults() {
+        ResiliencePolicy.Settings settings = new ResiliencePolicy.Settings();
+        settings.setTimeoutMs(30_000);
+        settings.setMaxConcurrentCalls(4);
+        return settings;
+    }
+}
@@ -0,0 +1,30 @@
+package com.autograder.backend.config;
+
+import com.autograder.backend.service.MLServiceClient;
+import com.autograder.backend.service.ResiliencePolicy;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class MetricsConfig {
+
+    /**
+     * In-flight calls and circuit state per ML service, read from its ResiliencePolicy.
+     * Request latency per service comes from the WebClient's http.client.requests timer.
+     */
+    @Bean
+    public MeterBinder mlServiceMetrics(MLServiceClient mlServiceClient) {
+        return registry -> mlServiceClient.policies().forEach((service, policy) -> {
+            Gauge.builder("ml.service.in.flight", policy, ResiliencePolicy::getInFlight)
+                    .description("Calls currently in flight to the ML service")
+                    .tag("service", service)
+                    .register(registry);
+            Gauge.builder("ml.service.circuit.open", policy, p -> p.getState() == ResiliencePolicy.State.CLOSED ? 0 : 1)
+                    .description("1 while the ML service's circuit breaker is open or half-open")
+                    .tag("service", service)
+                    .register(registry);
+        });
+    }
+}
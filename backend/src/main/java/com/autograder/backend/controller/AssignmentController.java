@@ -1,14 +1,23 @@
 package com.autograder.backend.controller;
 
+import com.autograder.backend.dto.AssignmentStatsDto;
+import com.autograder.backend.dto.AssignmentSummaryDto;
+import com.autograder.backend.dto.GradingResultSummaryDto;
+import com.autograder.backend.dto.KeysetPageDto;
 import com.autograder.backend.entity.Assignment;
 import com.autograder.backend.repository.AssignmentRepository;
+import com.autograder.backend.repository.GradingResultRepository;
+import com.autograder.backend.service.AssignmentStatsService;
+import com.autograder.backend.service.GradingService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Pageable;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
 
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/assignments")
@@ -18,6 +27,9 @@ import java.util.Optional;
 public class AssignmentController {
 
     private final AssignmentRepository assignmentRepository;
+    private final GradingResultRepository gradingResultRepository;
+    private final AssignmentStatsService assignmentStatsService;
+    private final GradingService gradingService;
 
     @PostMapping
     public ResponseEntity<?> createAssignment(@RequestBody java.util.Map<String, Object> payload) {
@@ -48,9 +60,16 @@ public class AssignmentController {
         }
     }
 
+    /**
+     * Keyset-paginated assignment listing; follow {@code nextAfter} for the next page.
+     */
     @GetMapping
-    public ResponseEntity<List<Assignment>> getAllAssignments() {
-        return ResponseEntity.ok(assignmentRepository.findAll());
+    public ResponseEntity<KeysetPageDto<AssignmentSummaryDto>> getAllAssignments(
+            @RequestParam(defaultValue = "0") Long after,
+            @RequestParam(defaultValue = "50") int limit) {
+        Pageable page = KeysetPageDto.limit(limit);
+        List<AssignmentSummaryDto> items = assignmentRepository.findSummariesAfter(after, page);
+        return ResponseEntity.ok(KeysetPageDto.of(items, page, AssignmentSummaryDto::id));
     }
 
     @GetMapping("/{id}")
@@ -59,4 +78,57 @@ public class AssignmentController {
                 .map(ResponseEntity::ok)
                 .orElse(ResponseEntity.notFound().build());
     }
+
+    /**
+     * Upload the blank template and the instructor key that submissions are graded against.
+     * Both are kept in the submission blob store; submissions waiting for them are queued.
+     */
+    @PostMapping("/{id}/materials")
+    public ResponseEntity<?> uploadGradingMaterials(
+            @PathVariable Long id,
+            @RequestParam("template") MultipartFile templateFile,
+            @RequestParam("instructor") MultipartFile instructorFile) {
+        try {
+            int queued = gradingService.attachGradingMaterials(id, templateFile, instructorFile);
+            return ResponseEntity.ok(Map.of("assignmentId", id, "submissionsQueued", queued));
+        } catch (Exception e) {
+            log.error("Failed to store grading materials for assignment {}", id, e);
+            return ResponseEntity.badRequest().body("Error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Keyset-paginated result summaries for an assignment (no feedback JSON or OCR text).
+     */
+    @GetMapping("/{id}/results")
+    public ResponseEntity<KeysetPageDto<GradingResultSummaryDto>> getAssignmentResults(
+            @PathVariable Long id,
+            @RequestParam(defaultValue = "0") Long after,
+            @RequestParam(defaultValue = "50") int limit) {
+        Pageable page = KeysetPageDto.limit(limit);
+        List<GradingResultSummaryDto> items = gradingResultRepository.findSummariesByAssignmentIdAfter(id, after, page);
+        return ResponseEntity.ok(KeysetPageDto.of(items, page, GradingResultSummaryDto::id));
+    }
+
+    /**
+     * Score statistics, served from the incrementally maintained summary row.
+     */
+    @GetMapping("/{id}/stats")
+    public ResponseEntity<AssignmentStatsDto> getAssignmentStats(@PathVariable Long id) {
+        if (!assignmentRepository.existsById(id)) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(assignmentStatsService.getStats(id));
+    }
+
+    /**
+     * Recompute the summary from the stored results (backfill or repair).
+     */
+    @PostMapping("/{id}/stats/rebuild")
+    public ResponseEntity<AssignmentStatsDto> rebuildAssignmentStats(@PathVariable Long id) {
+        if (!assignmentRepository.existsById(id)) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(assignmentStatsService.rebuild(id));
+    }
 }
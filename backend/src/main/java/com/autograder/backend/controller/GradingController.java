@@ -1,16 +1,27 @@
 package com.autograder.backend.controller;
 
+import com.autograder.backend.dto.GradingJobMapper;
 import com.autograder.backend.dto.GradingJobRequestDto;
+import com.autograder.backend.dto.GradingJobResponseDto;
+import com.autograder.backend.entity.GradingJob;
 import com.autograder.backend.repository.GradingJobRepository;
 import com.autograder.backend.repository.GradingResultRepository;
 import com.autograder.backend.service.GradingService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/grading")
@@ -19,55 +30,68 @@ import java.util.Map;
 @Transactional(readOnly = true)
 public class GradingController {
 
+    private static final int MAX_BULK_IDS = 500;
+
     private final GradingService gradingService;
     private final GradingJobRepository gradingJobRepository;
     private final GradingResultRepository gradingResultRepository;
 
+    /**
+     * Queue grading for a stored submission. A submission has one job: if it is already
+     * queued (e.g. at upload), that job is returned with 202. 409 while the assignment has
+     * no template/instructor key.
+     */
     @PostMapping("/jobs")
+    @Transactional(propagation = Propagation.NOT_SUPPORTED) // a refused request must not roll back an outer transaction
     public ResponseEntity<?> createGradingJob(@RequestBody GradingJobRequestDto request) {
-        gradingService.startGrading(request.getSubmissionId());
+        GradingJob job;
+        try {
+            job = gradingService.startGrading(request.getSubmissionId());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage()));
+        }
 
         Map<String, Object> response = new HashMap<>();
-        response.put("message", "Grading process started");
+        response.put("message", job.getStatus() == GradingJob.JobStatus.PENDING
+                ? "Grading job queued" : "Submission already has a grading job");
+        response.put("jobId", job.getId());
         response.put("submissionId", request.getSubmissionId());
-        response.put("status", "PROCESSING");
+        response.put("status", job.getStatus().name());
+
+        return ResponseEntity.accepted().body(response);
+    }
 
-        return ResponseEntity.ok(response);
+    /**
+     * Status of many jobs in one round trip ({@code ?ids=1,2,3}), in request order.
+     * Unknown ids are left out. Jobs and their submissions are loaded with a single query.
+     */
+    @GetMapping("/jobs")
+    public ResponseEntity<?> getJobStatuses(@RequestParam("ids") List<Long> ids) {
+        Collection<Long> unique = new LinkedHashSet<>(ids);
+        if (unique.size() > MAX_BULK_IDS) {
+            return ResponseEntity.badRequest().body(Map.of("error", "At most " + MAX_BULK_IDS + " job ids per request."));
+        }
+        Map<Long, GradingJob> byId = gradingJobRepository.findAllWithSubmissionByIdIn(unique).stream()
+                .collect(Collectors.toMap(GradingJob::getId, Function.identity()));
+        List<GradingJobResponseDto> jobs = unique.stream()
+                .map(byId::get)
+                .filter(Objects::nonNull)
+                .map(GradingJobMapper::toJobDto)
+                .toList();
+        return ResponseEntity.ok(jobs);
     }
 
     @GetMapping("/jobs/{jobId}")
     public ResponseEntity<?> getJobStatus(@PathVariable Long jobId) {
-        return gradingJobRepository.findById(jobId)
-                .map(job -> {
-                    com.autograder.backend.dto.GradingJobResponseDto dto = new com.autograder.backend.dto.GradingJobResponseDto();
-                    dto.setId(job.getId());
-                    dto.setSubmissionId(job.getSubmission().getId());
-                    dto.setStatus(job.getStatus().name());
-                    dto.setErrorMessage(job.getErrorMessage());
-                    dto.setCreatedAt(job.getCreatedAt());
-                    dto.setStartedAt(job.getStartedAt());
-                    dto.setCompletedAt(job.getCompletedAt());
-                    return ResponseEntity.ok(dto);
-                })
+        return gradingJobRepository.findWithSubmissionById(jobId)
+                .map(job -> ResponseEntity.ok(GradingJobMapper.toJobDto(job)))
                 .orElse(ResponseEntity.notFound().build());
     }
 
     @GetMapping("/results/{jobId}")
     public ResponseEntity<?> getGradingResult(@PathVariable Long jobId) {
-        return gradingResultRepository.findByJobId(jobId)
-                .map(result -> {
-                    com.autograder.backend.dto.GradingResultResponseDto dto = new com.autograder.backend.dto.GradingResultResponseDto();
-                    dto.setId(result.getId());
-                    dto.setJobId(result.getJob().getId());
-                    dto.setScore(result.getScore());
-                    dto.setMaxScore(result.getMaxScore());
-                    dto.setFeedbackJson(result.getFeedbackJson());
-                    dto.setConfidenceScore(result.getConfidenceScore());
-                    dto.setOcrText(result.getOcrText());
-                    dto.setRequiresReview(result.getRequiresReview());
-                    dto.setCreatedAt(result.getCreatedAt());
-                    return ResponseEntity.ok(dto);
-                })
+        return gradingResultRepository.findWithJobByJobId(jobId)
+                .map(result -> ResponseEntity.ok(GradingJobMapper.toResultDto(result)))
                 .orElse(ResponseEntity.notFound().build());
     }
 }
@@ -1,22 +1,51 @@
 package com.autograder.backend.controller;
 
+import com.autograder.backend.entity.GradingJob;
+import com.autograder.backend.service.AdmissionControl;
+import com.autograder.backend.service.GradingPipelineService;
+import com.autograder.backend.service.GradingService;
 import com.autograder.backend.service.MLServiceClient;
+import com.autograder.backend.service.MLServiceUnavailableException;
+import com.autograder.backend.service.ZoneResultCache;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.util.FileSystemUtils;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 /**
  * GradingOrchestrationController
  *
- * Single endpoint that runs the full Vision-First pipeline:
- * 1. Crop instructor zones (visual ground truth)
- * 2. Crop student zones (with alignment confidence)
- * 3. Serial-with-Delay grade each zone (Demo Resilience)
- * 4. Generate class analytics summary
+ * Entry points for the Vision-First pipeline (see GradingPipelineService):
+ * - /run       runs the reactive pipeline; the servlet thread is released while the ML services work
+ * - /run-stream runs the same pipeline as Server-Sent Events: crops, each zone score as it
+ *              returns, then analytics
+ * - /run-batch grades many student papers (multipart list or zip) against one template/key and
+ *              streams one NDJSON line per student, then the cohort analytics, then a "persisted"
+ *              line once the results are written in one batched transaction as standalone
+ *              records, attached to no assignment
+ * - /run-async stores the uploads, queues a PENDING GradingJob and returns its id and estimated
+ *              queue position at once; poll GET /api/grading/jobs/{jobId} for the result
  */
 @RestController
 @RequestMapping("/api/grading")
@@ -25,95 +54,214 @@ import java.util.*;
 @Slf4j
 public class GradingOrchestrationController {
 
+    private final GradingPipelineService gradingPipelineService;
+    private final GradingService gradingService;
+    private final ZoneResultCache zoneResultCache;
     private final MLServiceClient mlServiceClient;
+    private final AdmissionControl admissionControl;
+
+    @Value("${grading.batch.max-archive-bytes:536870912}")
+    private long maxArchiveBytes;
+
+    @Value("${grading.batch.max-archive-entries:2000}")
+    private int maxArchiveEntries;
 
     @PostMapping("/run")
-    public ResponseEntity<?> runGrading(
+    public Mono<ResponseEntity<?>> runGrading(
             @RequestParam("template") MultipartFile templateFile,
             @RequestParam("instructor") MultipartFile instructorFile,
             @RequestParam("student") MultipartFile studentFile,
             @RequestParam(value = "rubric", required = false) String formRubric) {
 
-        try {
-            log.info("=== Grading pipeline started ===");
-
-            // ── Step 1: Crop instructor zones ───────────────────────────────
-            log.info("Step 1: Cropping instructor zones...");
-            Map<String, Object> instructorResponse = mlServiceClient.cropZones(templateFile, instructorFile);
-            @SuppressWarnings("unchecked")
-            Map<String, String> instructorCrops = (Map<String, String>) instructorResponse.get("crops");
-            if (instructorCrops == null || instructorCrops.isEmpty()) {
-                return ResponseEntity.badRequest().body(Map.of("error", "No answer zones found in instructor key."));
-            }
+        return gradingPipelineService.runReactive(
+                        MLServiceClient.asResource(templateFile),
+                        MLServiceClient.asResource(instructorFile),
+                        MLServiceClient.asResource(studentFile),
+                        "STUDENT_001", formRubric)
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .onErrorResume(MLServiceUnavailableException.class, e -> Mono.just(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                        .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, e.getRetryAfter().toSeconds())))
+                        .body(Map.of("error", e.getMessage()))))
+                .onErrorResume(IllegalArgumentException.class,
+                        e -> Mono.just(ResponseEntity.badRequest().body(Map.of("error", e.getMessage()))))
+                .onErrorResume(IllegalStateException.class,
+                        e -> Mono.just(ResponseEntity.internalServerError().body(Map.of("error", e.getMessage()))))
+                .onErrorResume(e -> {
+                    log.error("Pipeline failed", e);
+                    return Mono.just(ResponseEntity.internalServerError().body(Map.of("error", "Pipeline error: " + e.getMessage())));
+                });
+    }
+
+    @PostMapping(value = "/run-stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Map<String, Object>>> runGradingStream(
+            @RequestParam("template") MultipartFile templateFile,
+            @RequestParam("instructor") MultipartFile instructorFile,
+            @RequestParam("student") MultipartFile studentFile,
+            @RequestParam(value = "rubric", required = false) String formRubric) {
+
+        return gradingPipelineService.streamReactive(
+                        MLServiceClient.asResource(templateFile),
+                        MLServiceClient.asResource(instructorFile),
+                        MLServiceClient.asResource(studentFile),
+                        "STUDENT_001", formRubric)
+                .onErrorResume(e -> {
+                    log.error("Pipeline failed", e);
+                    return Mono.just(Map.<String, Object>of("type", "error", "error", "Pipeline error: " + e.getMessage()));
+                })
+                .map(event -> ServerSentEvent.<Map<String, Object>>builder()
+                        .event((String) event.get("type"))
+                        .data(event)
+                        .build());
+    }
+
+    @PostMapping(value = "/run-batch", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<Map<String, Object>> runBatchGrading(
+            @RequestParam("template") MultipartFile templateFile,
+            @RequestParam("instructor") MultipartFile instructorFile,
+            @RequestParam(value = "students", required = false) List<MultipartFile> studentFiles,
+            @RequestParam(value = "archive", required = false) MultipartFile archive,
+            @RequestParam(value = "rubric", required = false) String formRubric) throws IOException {
 
-            // ── Step 2: Crop student zones ──────────────────────────────────
-            log.info("Step 2: Cropping student zones...");
-            Map<String, Object> studentResponse = mlServiceClient.cropZones(templateFile, studentFile);
-            @SuppressWarnings("unchecked")
-            Map<String, String> studentCrops = (Map<String, String>) studentResponse.get("crops");
-            double alignmentConfidence = studentResponse.containsKey("alignment_confidence")
-                    ? ((Number) studentResponse.get("alignment_confidence")).doubleValue()
-                    : 0.0;
-            if (studentCrops == null || studentCrops.isEmpty()) {
-                return ResponseEntity.badRequest().body(Map.of("error", "Could not align student paper to template."));
+        List<Resource> students = new ArrayList<>();
+        if (studentFiles != null) {
+            for (MultipartFile studentFile : studentFiles) {
+                students.add(MLServiceClient.asResource(studentFile));
             }
-            log.info("Zones found: {} | Alignment: {}", studentCrops.keySet(), alignmentConfidence);
-
-            // ── Step 3: Resilient Serial Grading (15s cool-down) ──────────
-            log.info("Step 3: Running serial grading ({} zones) with cool-downs...", studentCrops.size());
-            String rubric = (formRubric != null && !formRubric.trim().isEmpty()) ? formRubric : "Grade the student answer mathematically by comparing it VISUALLY to the instructor's key. Be objective.";
-            List<Map<String, Object>> gradingResults = new ArrayList<>();
-
-            for (Map.Entry<String, String> entry : studentCrops.entrySet()) {
-                String zoneId = entry.getKey();
-                log.info("Grading Zone {}...", zoneId);
-                
-                try {
-                    Map<String, Object> result = mlServiceClient.gradeSingleZone(
-                        "STUDENT_001", zoneId, entry.getValue(), instructorCrops.get(zoneId), rubric
-                    );
-                    
-                    if (result != null) {
-                        Map<String, Object> normalized = new HashMap<>();
-                        normalized.put("student_id", "STUDENT_001");
-                        normalized.put("zone_id", zoneId);
-                        normalized.put("score", result.get("total_score"));
-                        normalized.put("max_score", result.get("max_score"));
-                        normalized.put("confidence", result.get("overall_confidence"));
-                        normalized.put("reasoning", result.get("reasoning")); // ⚡ FIXED: Mapping actual AI reasoning
-                        normalized.put("concept", result.get("discovered_concept"));
-                        gradingResults.add(normalized);
-                    }
-                    
-                    if (gradingResults.size() < studentCrops.size()) {
-                        log.info("Cooling down for 15s to preserve API quota...");
-                        Thread.sleep(15000);
-                    }
-                } catch (Exception e) {
-                    log.error("Failed to grade zone {}: {}", zoneId, e.getMessage());
-                }
+        }
+        Path extracted = null;
+        if (archive != null && !archive.isEmpty()) {
+            extracted = Files.createTempDirectory("grading-batch-");
+            try {
+                students.addAll(extractArchive(archive, extracted));
+            } catch (IllegalArgumentException e) {
+                deleteQuietly(extracted);
+                return Flux.just(Map.<String, Object>of("type", "error", "error", e.getMessage()));
             }
+        }
+        if (students.isEmpty()) {
+            deleteQuietly(extracted);
+            return Flux.just(Map.<String, Object>of("type", "error", "error", "No student papers provided (use 'students' or 'archive')."));
+        }
 
-            if (gradingResults.isEmpty()) {
-                return ResponseEntity.internalServerError().body(Map.of("error", "Grading engine failed to return results."));
-            }
+        Path cleanup = extracted;
+        List<Map<String, Object>> graded = Collections.synchronizedList(new ArrayList<>());
+        return gradingPipelineService.runBatchReactive(
+                        MLServiceClient.asResource(templateFile),
+                        MLServiceClient.asResource(instructorFile),
+                        students, formRubric)
+                .doOnNext(event -> {
+                    if ("student".equals(event.get("type")) && !event.containsKey("error")) {
+                        graded.add(event);
+                    }
+                })
+                .concatWith(Mono.defer(() -> persistBatch(graded)))
+                .onErrorResume(e -> {
+                    log.error("Batch pipeline failed", e);
+                    return Mono.just(Map.<String, Object>of("type", "error", "error", "Pipeline error: " + e.getMessage()));
+                })
+                .doFinally(signal -> deleteQuietly(cleanup));
+    }
+
+    /** Records every graded student in one batched transaction once the cohort has finished. */
+    private Mono<Map<String, Object>> persistBatch(List<Map<String, Object>> graded) {
+        if (graded.isEmpty()) {
+            return Mono.empty();
+        }
+        return Mono.fromCallable(() -> gradingService.recordBatch(graded))
+                .subscribeOn(Schedulers.boundedElastic())
+                .map(count -> {
+                    Map<String, Object> event = new LinkedHashMap<>();
+                    event.put("type", "persisted");
+                    event.put("jobs_recorded", count);
+                    return event;
+                });
+    }
 
-            // ── Step 4: Analytics and Final Response ────────────────────────
-            log.info("Step 4: Generating analytics...");
-            Map<String, Object> analytics = mlServiceClient.getAnalytics(gradingResults);
+    @GetMapping("/result-cache/stats")
+    public ResponseEntity<Map<String, Object>> getResultCacheStats() {
+        return ResponseEntity.ok(zoneResultCache.stats());
+    }
 
-            Map<String, Object> response = new LinkedHashMap<>();
-            response.put("alignment_confidence", alignmentConfidence);
-            response.put("zones_graded", gradingResults.size());
-            response.put("per_zone_scores", gradingResults);
-            response.put("analytics", analytics);
+    @GetMapping("/ml-services/stats")
+    public ResponseEntity<Map<String, Object>> getMlServiceStats() {
+        return ResponseEntity.ok(mlServiceClient.resilienceStats());
+    }
 
-            log.info("=== Grading pipeline complete ===");
-            return ResponseEntity.ok(response);
+    @PostMapping("/run-async")
+    public ResponseEntity<?> runGradingAsync(
+            @RequestParam("template") MultipartFile templateFile,
+            @RequestParam("instructor") MultipartFile instructorFile,
+            @RequestParam("student") MultipartFile studentFile,
+            @RequestParam(value = "rubric", required = false) String formRubric) {
+
+        try {
+            GradingJob job = gradingService.queuePipelineJob(templateFile, instructorFile, studentFile, formRubric);
+
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("jobId", job.getId());
+            response.put("status", job.getStatus().name());
+            response.put("queuePositionEstimate", admissionControl.queuePosition(job));
+            response.put("statusUrl", "/api/grading/jobs/" + job.getId());
+            return ResponseEntity.accepted().body(response);
 
         } catch (Exception e) {
-            log.error("Pipeline failed", e);
-            return ResponseEntity.internalServerError().body(Map.of("error", "Pipeline error: " + e.getMessage()));
+            log.error("Failed to queue grading job", e);
+            return ResponseEntity.internalServerError().body(Map.of("error", "Failed to queue job: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Unpack the entries of a zip of student papers into {@code dir}.
+     * Only each entry's file name is kept, so paths inside the archive cannot escape {@code dir}.
+     * Uncompressed bytes and entries are counted while copying; an archive over
+     * {@code grading.batch.max-archive-bytes} or {@code grading.batch.max-archive-entries}
+     * is rejected with IllegalArgumentException before it can fill the disk.
+     */
+    private List<Resource> extractArchive(MultipartFile archive, Path dir) throws IOException {
+        List<Resource> papers = new ArrayList<>();
+        long totalBytes = 0;
+        int entries = 0;
+        byte[] buffer = new byte[64 * 1024];
+        try (ZipInputStream zip = new ZipInputStream(archive.getInputStream())) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                if (++entries > maxArchiveEntries) {
+                    throw new IllegalArgumentException("Archive has more than " + maxArchiveEntries + " entries.");
+                }
+                if (entry.isDirectory() || entry.getName().startsWith("__MACOSX")) {
+                    continue;
+                }
+                String name = Paths.get(entry.getName()).getFileName().toString();
+                if (name.startsWith(".")) {
+                    continue;
+                }
+                Path target = dir.resolve(papers.size() + "_" + name);
+                try (OutputStream out = Files.newOutputStream(target)) {
+                    int read;
+                    while ((read = zip.read(buffer)) != -1) {
+                        totalBytes += read;
+                        if (totalBytes > maxArchiveBytes) {
+                            throw new IllegalArgumentException("Archive expands to more than " + maxArchiveBytes + " bytes.");
+                        }
+                        out.write(buffer, 0, read);
+                    }
+                }
+                papers.add(new FileSystemResource(target) {
+                    @Override public String getFilename() { return name; }
+                });
+            }
+        }
+        return papers;
+    }
+
+    private static void deleteQuietly(Path dir) {
+        if (dir == null) {
+            return;
+        }
+        try {
+            FileSystemUtils.deleteRecursively(dir);
+        } catch (IOException e) {
+            log.warn("Could not delete batch temp dir {}: {}", dir, e.getMessage());
         }
     }
 }
@@ -6,19 +6,37 @@ import com.autograder.backend.entity.User;
 import com.autograder.backend.repository.AssignmentRepository;
 import com.autograder.backend.repository.SubmissionRepository;
 import com.autograder.backend.repository.UserRepository;
+import com.autograder.backend.entity.GradingJob;
+import com.autograder.backend.service.AdmissionControl;
 import com.autograder.backend.service.GradingService;
+import com.autograder.backend.service.SubmissionBlobStore;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.UUID;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/submissions")
@@ -31,9 +49,8 @@ public class SubmissionController {
     private final AssignmentRepository assignmentRepository;
     private final UserRepository userRepository;
     private final GradingService gradingService;
-
-    @Value("${file.upload-dir}")
-    private String uploadDir;
+    private final SubmissionBlobStore blobStore;
+    private final AdmissionControl admissionControl;
 
     @PostMapping
     public ResponseEntity<?> createSubmission(
@@ -49,34 +66,44 @@ public class SubmissionController {
             User student = userRepository.findById(studentId)
                     .orElseThrow(() -> new RuntimeException("Student not found"));
 
-            // Ensure upload directory exists
-            Path uploadPath = Paths.get(uploadDir);
-            if (!Files.exists(uploadPath)) {
-                Files.createDirectories(uploadPath);
-            }
-
-            // Save file
+            // Save file (identical re-uploads share one stored blob)
             String originalFilename = file.getOriginalFilename();
             if (originalFilename == null || originalFilename.isEmpty()) {
                 originalFilename = "submission.png";
             }
-            String fileName = UUID.randomUUID() + "_" + originalFilename;
-            Path filePath = uploadPath.resolve(fileName);
-            Files.copy(file.getInputStream(), filePath);
+            SubmissionBlobStore.StoredBlob blob = blobStore.store(file.getInputStream());
+            if (blob.deduplicated()) {
+                log.info("Upload matches stored blob {}, reusing it", blob.digest());
+            }
 
             // Create Submission entity
             Submission submission = new Submission();
             submission.setAssignment(assignment);
             submission.setStudent(student);
-            submission.setFilePath(filePath.toAbsolutePath().toString());
+            submission.setFilePath(blob.path().toString());
+            submission.setFileType(fileTypeOf(originalFilename));
+            submission.setContentSha256(blob.digest());
+            submission.setFileSize(blob.size());
 
             Submission saved = submissionRepository.save(submission);
             log.info("Submission saved with ID: {}", saved.getId());
 
-            // Trigger Grading
-            gradingService.startGrading(saved.getId());
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("submissionId", saved.getId());
+            response.put("status", saved.getStatus().name());
+
+            // Trigger Grading (or leave PENDING until the assignment's template and key are uploaded)
+            Optional<GradingJob> queued = gradingService.queueIfReady(assignmentId, saved.getId());
+            if (queued.isPresent()) {
+                GradingJob job = queued.get();
+                response.put("jobId", job.getId());
+                response.put("queuePositionEstimate", admissionControl.queuePosition(job));
+                response.put("statusUrl", "/api/grading/jobs/" + job.getId());
+            } else {
+                log.info("Assignment {} has no template/instructor key yet; submission {} waits", assignmentId, saved.getId());
+            }
 
-            return ResponseEntity.ok(saved);
+            return ResponseEntity.accepted().body(response);
 
         } catch (IOException e) {
             log.error("Failed to store file", e);
@@ -86,4 +113,83 @@ public class SubmissionController {
             return ResponseEntity.badRequest().body("Error: " + e.getMessage());
         }
     }
+
+    /**
+     * Download the submitted file. Supports a single byte range ({@code Range: bytes=a-b}) and
+     * {@code If-None-Match} on the content digest. The body goes from the file to the socket via
+     * Tomcat sendfile when the connector offers it, otherwise via FileChannel.transferTo.
+     */
+    @GetMapping("/{id}/file")
+    public void downloadFile(@PathVariable Long id,
+                             HttpServletRequest request,
+                             HttpServletResponse response) throws IOException {
+        Submission submission = submissionRepository.findById(id).orElse(null);
+        Path file = submission != null ? Paths.get(submission.getFilePath()) : null;
+        if (file == null || !Files.isRegularFile(file)) {
+            response.sendError(HttpStatus.NOT_FOUND.value());
+            return;
+        }
+
+        long length = Files.size(file);
+        String etag = submission.getContentSha256() != null ? "\"" + submission.getContentSha256() + "\"" : null;
+        if (etag != null) {
+            // Blobs are content-addressed, so the bytes behind this ETag never change
+            response.setHeader(HttpHeaders.ETAG, etag);
+            response.setHeader(HttpHeaders.CACHE_CONTROL, "private, max-age=31536000, immutable");
+            if (etag.equals(request.getHeader(HttpHeaders.IF_NONE_MATCH))) {
+                response.setStatus(HttpStatus.NOT_MODIFIED.value());
+                return;
+            }
+        }
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setContentType(MediaTypeFactory.getMediaType("file." + submission.getFileType())
+                .orElse(MediaType.APPLICATION_OCTET_STREAM).toString());
+
+        long start = 0;
+        long end = length - 1;
+        String range = request.getHeader(HttpHeaders.RANGE);
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (range != null && (ifRange == null || ifRange.equals(etag))) {
+            try {
+                List<HttpRange> ranges = HttpRange.parseRanges(range);
+                // Multiple ranges are answered with the whole file, which RFC 9110 allows
+                if (ranges.size() == 1) {
+                    start = ranges.get(0).getRangeStart(length);
+                    end = ranges.get(0).getRangeEnd(length);
+                    response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+                }
+            } catch (IllegalArgumentException e) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                response.sendError(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                return;
+            }
+        }
+        long count = end - start + 1;
+        response.setContentLengthLong(count);
+
+        if (Boolean.TRUE.equals(request.getAttribute("org.apache.tomcat.sendfile.support"))) {
+            request.setAttribute("org.apache.tomcat.sendfile.filename", file.toAbsolutePath().toString());
+            request.setAttribute("org.apache.tomcat.sendfile.start", start);
+            request.setAttribute("org.apache.tomcat.sendfile.end", end + 1);
+            return;
+        }
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            while (count > 0) {
+                long sent = in.transferTo(position, count, out);
+                if (sent <= 0) {
+                    break;
+                }
+                position += sent;
+                count -= sent;
+            }
+        }
+    }
+
+    private static String fileTypeOf(String filename) {
+        String extension = StringUtils.getFilenameExtension(filename);
+        return extension != null ? extension.toLowerCase(Locale.ROOT) : null;
+    }
 }
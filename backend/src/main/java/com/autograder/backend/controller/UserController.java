@@ -1,8 +1,11 @@
 package com.autograder.backend.controller;
 
+import com.autograder.backend.dto.KeysetPageDto;
+import com.autograder.backend.dto.UserSummaryDto;
 import com.autograder.backend.entity.User;
 import com.autograder.backend.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Pageable;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -21,9 +24,16 @@ public class UserController {
         return ResponseEntity.ok(userRepository.save(user));
     }
 
+    /**
+     * Keyset-paginated user listing; follow {@code nextAfter} for the next page.
+     */
     @GetMapping
-    public ResponseEntity<List<User>> getAllUsers() {
-        return ResponseEntity.ok(userRepository.findAll());
+    public ResponseEntity<KeysetPageDto<UserSummaryDto>> getAllUsers(
+            @RequestParam(defaultValue = "0") Long after,
+            @RequestParam(defaultValue = "50") int limit) {
+        Pageable page = KeysetPageDto.limit(limit);
+        List<UserSummaryDto> items = userRepository.findSummariesAfter(after, page);
+        return ResponseEntity.ok(KeysetPageDto.of(items, page, UserSummaryDto::id));
     }
 
     @GetMapping("/{id}")
@@ -0,0 +1,31 @@
+package com.autograder.backend.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Analytics service /api/analytics/summary response.
+ * {@code error} is only set when the service had no results to summarize.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record AnalyticsSummaryDto(
+        @JsonProperty("overall_average_pct") Double overallAveragePct,
+        @JsonProperty("concept_breakdown") Map<String, ConceptBreakdown> conceptBreakdown,
+        @JsonProperty("top_performers") List<String> topPerformers,
+        @JsonProperty("at_risk_students") List<String> atRiskStudents,
+        @JsonProperty("teacher_recommendation") String teacherRecommendation,
+        @JsonProperty("processing_engine") String processingEngine,
+        @JsonProperty("error") String error) {
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record ConceptBreakdown(
+            @JsonProperty("average_score") Double averageScore,
+            @JsonProperty("mastery_level") String masteryLevel,
+            @JsonProperty("common_misconception") String commonMisconception) {
+    }
+}
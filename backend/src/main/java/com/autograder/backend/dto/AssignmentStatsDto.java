@@ -0,0 +1,21 @@
+package com.autograder.backend.dto;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * Score statistics for one assignment. Scores are raw points; percentiles are
+ * percentages of each result's max score (p25, p50, p75, p90), interpolated
+ * within 1% buckets. Null fields mean there are no results yet.
+ */
+public record AssignmentStatsDto(
+        Long assignmentId,
+        long resultCount,
+        Double meanScore,
+        Double minScore,
+        Double maxScore,
+        Double stdDevScore,
+        Double requiresReviewRatio,
+        Map<String, Double> percentilesPct,
+        LocalDateTime updatedAt) {
+}
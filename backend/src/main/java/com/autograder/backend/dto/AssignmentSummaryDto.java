@@ -0,0 +1,14 @@
+package com.autograder.backend.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * Assignment listing row: no description, rubric or reference-solution text.
+ */
+public record AssignmentSummaryDto(
+        Long id,
+        String title,
+        Double totalPoints,
+        LocalDateTime dueDate,
+        LocalDateTime createdAt) {
+}
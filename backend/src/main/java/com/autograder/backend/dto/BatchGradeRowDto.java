@@ -0,0 +1,18 @@
+package com.autograder.backend.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * One zone of a grading engine /api/grade/batch-vision response.
+ * {@code zoneId} echoes the key the zone was submitted under.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record BatchGradeRowDto(
+        @JsonProperty("zone_id") String zoneId,
+        @JsonProperty("score") Double score,
+        @JsonProperty("max_score") Double maxScore,
+        @JsonProperty("confidence") Double confidence,
+        @JsonProperty("reasoning") String reasoning,
+        @JsonProperty("concept") String concept) {
+}
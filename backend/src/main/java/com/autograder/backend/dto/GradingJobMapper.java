@@ -0,0 +1,41 @@
+package com.autograder.backend.dto;
+
+import com.autograder.backend.entity.GradingJob;
+import com.autograder.backend.entity.GradingResult;
+
+/**
+ * Entity → response DTO mapping for grading jobs and their results.
+ * Callers load the associations read here (job submission, result job) in the same query.
+ */
+public final class GradingJobMapper {
+
+    private GradingJobMapper() {
+    }
+
+    public static GradingJobResponseDto toJobDto(GradingJob job) {
+        GradingJobResponseDto dto = new GradingJobResponseDto();
+        dto.setId(job.getId());
+        dto.setSubmissionId(job.getSubmission() != null ? job.getSubmission().getId() : null);
+        dto.setStatus(job.getStatus().name());
+        dto.setErrorMessage(job.getErrorMessage());
+        dto.setCreatedAt(job.getCreatedAt());
+        dto.setStartedAt(job.getStartedAt());
+        dto.setCompletedAt(job.getCompletedAt());
+        dto.setResult(job.getResultJson());
+        return dto;
+    }
+
+    public static GradingResultResponseDto toResultDto(GradingResult result) {
+        GradingResultResponseDto dto = new GradingResultResponseDto();
+        dto.setId(result.getId());
+        dto.setJobId(result.getJob().getId());
+        dto.setScore(result.getScore());
+        dto.setMaxScore(result.getMaxScore());
+        dto.setFeedbackJson(result.getFeedbackJson());
+        dto.setConfidenceScore(result.getConfidenceScore());
+        dto.setOcrText(result.getOcrText());
+        dto.setRequiresReview(result.getRequiresReview());
+        dto.setCreatedAt(result.getCreatedAt());
+        return dto;
+    }
+}
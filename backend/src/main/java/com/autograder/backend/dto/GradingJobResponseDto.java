@@ -1,5 +1,6 @@
 package com.autograder.backend.dto;
 
+import com.fasterxml.jackson.annotation.JsonRawValue;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -18,4 +19,7 @@ public class GradingJobResponseDto {
     private LocalDateTime createdAt;
     private LocalDateTime startedAt;
     private LocalDateTime completedAt;
+
+    @JsonRawValue
+    private String result; // Pipeline response JSON once COMPLETED
 }
@@ -0,0 +1,15 @@
+package com.autograder.backend.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/**
+ * Response body of /api/grading/run, also stored as the result of an async grading job.
+ */
+public record GradingPipelineResultDto(
+        @JsonProperty("alignment_confidence") double alignmentConfidence,
+        @JsonProperty("zones_graded") int zonesGraded,
+        @JsonProperty("per_zone_scores") List<ZoneGradeDto> perZoneScores,
+        @JsonProperty("analytics") AnalyticsSummaryDto analytics) {
+}
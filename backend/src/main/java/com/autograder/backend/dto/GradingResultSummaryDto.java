@@ -0,0 +1,20 @@
+package com.autograder.backend.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * Result listing row for an assignment. The large feedback JSON and OCR text are left out;
+ * fetch them per job from {@code GET /api/grading/results/{jobId}}.
+ */
+public record GradingResultSummaryDto(
+        Long id,
+        Long jobId,
+        Long submissionId,
+        Long studentId,
+        String studentName,
+        Double score,
+        Double maxScore,
+        Double confidenceScore,
+        Boolean requiresReview,
+        LocalDateTime createdAt) {
+}
@@ -0,0 +1,31 @@
+package com.autograder.backend.dto;
+
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * One page of a keyset-paginated listing, ordered by id.
+ * Pass {@code nextAfter} back as {@code ?after=} to fetch the next page; it is null on the last page.
+ */
+public record KeysetPageDto<T>(List<T> items, Long nextAfter) {
+
+    public static final int MAX_LIMIT = 500;
+
+    /**
+     * The first {@code limit} rows after the cursor, clamped to 1..MAX_LIMIT.
+     */
+    public static Pageable limit(int limit) {
+        return PageRequest.ofSize(Math.max(1, Math.min(limit, MAX_LIMIT)));
+    }
+
+    /**
+     * A full page means there may be more rows; a short page is the last one.
+     */
+    public static <T> KeysetPageDto<T> of(List<T> items, Pageable page, Function<T, Long> id) {
+        Long nextAfter = items.size() == page.getPageSize() ? id.apply(items.get(items.size() - 1)) : null;
+        return new KeysetPageDto<>(items, nextAfter);
+    }
+}
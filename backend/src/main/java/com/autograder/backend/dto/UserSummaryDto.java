@@ -0,0 +1,16 @@
+package com.autograder.backend.dto;
+
+import com.autograder.backend.entity.User;
+
+import java.time.LocalDateTime;
+
+/**
+ * User listing row (never includes the password hash).
+ */
+public record UserSummaryDto(
+        Long id,
+        String email,
+        String name,
+        User.UserRole role,
+        LocalDateTime createdAt) {
+}
@@ -0,0 +1,16 @@
+package com.autograder.backend.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Grading engine /api/grade/vision response (fields the pipeline uses).
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record VisionGradeResponseDto(
+        @JsonProperty("total_score") Double totalScore,
+        @JsonProperty("max_score") Double maxScore,
+        @JsonProperty("overall_confidence") Double overallConfidence,
+        @JsonProperty("reasoning") String reasoning,
+        @JsonProperty("discovered_concept") String discoveredConcept) {
+}
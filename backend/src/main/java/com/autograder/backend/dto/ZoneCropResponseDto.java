@@ -0,0 +1,23 @@
+package com.autograder.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * OCR service /api/ocr/crop-zones response.
+ * Crops are held as decoded JPEG bytes, not base64 strings.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ZoneCropResponseDto {
+
+    private Map<String, byte[]> crops = new LinkedHashMap<>(); // zone_id -> JPEG bytes
+    private boolean cacheHit;
+    private double alignmentConfidence;
+    private double totalProcessingTime;
+}
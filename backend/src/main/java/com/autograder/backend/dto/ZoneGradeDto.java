@@ -0,0 +1,34 @@
+package com.autograder.backend.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Normalized grade for one answer zone, in the shape the analytics service expects.
+ * Produced from either grading-engine response and serialized as-is into pipeline responses.
+ */
+public record ZoneGradeDto(
+        @JsonProperty("student_id") String studentId,
+        @JsonProperty("zone_id") String zoneId,
+        @JsonProperty("score") Double score,
+        @JsonProperty("max_score") Double maxScore,
+        @JsonProperty("confidence") Double confidence,
+        @JsonProperty("reasoning") String reasoning,
+        @JsonProperty("concept") String concept,
+        @JsonProperty("requires_review") @JsonInclude(JsonInclude.Include.NON_NULL) Boolean requiresReview) {
+
+    public ZoneGradeDto(String studentId, String zoneId, Double score, Double maxScore,
+                        Double confidence, String reasoning, String concept) {
+        this(studentId, zoneId, score, maxScore, confidence, reasoning, concept, null);
+    }
+
+    /** The same grade attributed to another student/zone (cache reuse). */
+    public ZoneGradeDto withIds(String studentId, String zoneId) {
+        return new ZoneGradeDto(studentId, zoneId, score, maxScore, confidence, reasoning, concept, requiresReview);
+    }
+
+    /** The same grade flagged for a person to confirm (e.g. reused from a similar, not identical, answer). */
+    public ZoneGradeDto forReview() {
+        return new ZoneGradeDto(studentId, zoneId, score, maxScore, confidence, reasoning, concept, true);
+    }
+}
@@ -37,6 +37,9 @@ public class Assignment {
     @Column(name = "rubric_text", columnDefinition = "TEXT")
     private String rubricText; // Natural language grading instructions
 
+    @Column(name = "template_path")
+    private String templatePath; // Path to the blank answer sheet the pipeline aligns papers to
+
     @Column(name = "reference_solution_path")
     private String referenceSolutionPath; // Path to instructor's solved PDF/image
 
@@ -53,4 +56,11 @@ public class Assignment {
     protected void onCreate() {
         createdAt = LocalDateTime.now();
     }
+
+    /**
+     * True once the template and instructor key are stored, i.e. submissions can be graded.
+     */
+    public boolean hasGradingMaterials() {
+        return templatePath != null && referenceSolutionPath != null;
+    }
 }
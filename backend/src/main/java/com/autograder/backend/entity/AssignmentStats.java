@@ -0,0 +1,59 @@
+package com.autograder.backend.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.time.LocalDateTime;
+
+/**
+ * Running score summary for one assignment, updated as each result is saved.
+ * Percentiles come from a histogram of score percentages (1% buckets, index 100 = full marks).
+ */
+@Entity
+@Table(name = "assignment_stats")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AssignmentStats {
+
+    public static final int BUCKETS = 101;
+
+    @Id
+    @Column(name = "assignment_id")
+    private Long assignmentId;
+
+    @Column(name = "result_count", nullable = false)
+    private long resultCount;
+
+    @Column(name = "score_sum", nullable = false)
+    private double scoreSum;
+
+    @Column(name = "score_sum_squares", nullable = false)
+    private double scoreSumSquares;
+
+    @Column(name = "min_score")
+    private Double minScore;
+
+    @Column(name = "max_score")
+    private Double maxScore;
+
+    @Column(name = "requires_review_count", nullable = false)
+    private long requiresReviewCount;
+
+    @JdbcTypeCode(SqlTypes.ARRAY)
+    @Column(name = "pct_histogram", nullable = false)
+    private long[] pctHistogram = new long[BUCKETS];
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
+    }
+}
@@ -8,24 +8,60 @@ import lombok.NoArgsConstructor;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "grading_jobs")
+@Table(name = "grading_jobs", indexes = @Index(name = "idx_grading_jobs_flow",
+        columnList = "status, priority_class, fair_share_key, created_at"))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class GradingJob {
 
+    /** Fair-share key of jobs that belong to no assignment (/run-async). */
+    public static final String ADHOC_FLOW = "adhoc";
+
+    /**
+     * Fair-share key of /run-batch records. Those rows are standalone: they are written COMPLETED,
+     * with no submission or assignment, never enter the queue and are left out of job-queue queries.
+     */
+    public static final String BATCH_FLOW = "batch";
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "grading_jobs_seq")
+    @SequenceGenerator(name = "grading_jobs_seq", sequenceName = "grading_jobs_seq", allocationSize = 50)
     private Long id;
 
     @OneToOne(fetch = FetchType.LAZY)
-    @JoinColumn(name = "submission_id", nullable = false)
-    private Submission submission;
+    @JoinColumn(name = "submission_id")
+    private Submission submission; // null for ad-hoc /run-async jobs and /run-batch records
+
+    @Column(name = "template_path")
+    private String templatePath;
+
+    @Column(name = "instructor_path")
+    private String instructorPath;
+
+    @Column(name = "student_path")
+    private String studentPath;
+
+    @Column(name = "rubric_text", columnDefinition = "TEXT")
+    private String rubricText;
+
+    @Column(name = "result_json", columnDefinition = "TEXT")
+    private String resultJson; // Pipeline response, set when COMPLETED
+
+    @Column(name = "worker_id")
+    private String workerId; // Node/worker that claimed the job
 
     @Enumerated(EnumType.STRING)
     @Column(nullable = false)
     private JobStatus status;
 
+    @Enumerated(EnumType.STRING)
+    @Column(name = "priority_class", nullable = false)
+    private PriorityClass priorityClass;
+
+    @Column(name = "fair_share_key", nullable = false)
+    private String fairShareKey; // Jobs with the same key share one fair-queuing flow (e.g. "assignment:12")
+
     @Column(name = "error_message", length = 1000)
     private String errorMessage;
 
@@ -44,6 +80,25 @@ public class GradingJob {
         if (status == null) {
             status = JobStatus.PENDING;
         }
+        if (priorityClass == null) {
+            priorityClass = PriorityClass.STANDARD;
+        }
+        if (fairShareKey == null) {
+            fairShareKey = ADHOC_FLOW;
+        }
+    }
+
+    public static String assignmentFlow(Long assignmentId) {
+        return "assignment:" + assignmentId;
+    }
+
+    /**
+     * Scheduling class; see GradingJobScheduler for the weights.
+     */
+    public enum PriorityClass {
+        INTERACTIVE, // a person is waiting on this one job (/run-async)
+        STANDARD,    // individual submissions
+        BULK         // backlogs queued in one go
     }
 
     public enum JobStatus {
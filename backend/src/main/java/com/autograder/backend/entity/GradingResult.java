@@ -15,7 +15,8 @@ import java.time.LocalDateTime;
 public class GradingResult {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "grading_results_seq")
+    @SequenceGenerator(name = "grading_results_seq", sequenceName = "grading_results_seq", allocationSize = 50)
     private Long id;
 
     @OneToOne(fetch = FetchType.LAZY)
@@ -8,7 +8,7 @@ import lombok.NoArgsConstructor;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "submissions")
+@Table(name = "submissions", indexes = @Index(name = "idx_submissions_assignment", columnList = "assignment_id"))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -32,6 +32,12 @@ public class Submission {
     @Column(name = "file_type")
     private String fileType; // pdf, jpg, png, etc.
 
+    @Column(name = "content_sha256", length = 64)
+    private String contentSha256; // Blob digest; filePath is the content-addressed blob
+
+    @Column(name = "file_size")
+    private Long fileSize;
+
     @Enumerated(EnumType.STRING)
     @Column(nullable = false)
     private SubmissionStatus status;
@@ -0,0 +1,54 @@
+package com.autograder.backend.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "zone_grading_results", indexes = @Index(name = "idx_zone_results_job", columnList = "job_id"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ZoneGradingResult {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "zone_grading_results_seq")
+    @SequenceGenerator(name = "zone_grading_results_seq", sequenceName = "zone_grading_results_seq", allocationSize = 50)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "job_id", nullable = false)
+    private GradingJob job;
+
+    @Column(name = "student_id")
+    private String studentId; // Pipeline label (e.g. file name), not a users.id
+
+    @Column(name = "zone_id", nullable = false)
+    private String zoneId;
+
+    @Column(nullable = false)
+    private Double score;
+
+    @Column(name = "max_score", nullable = false)
+    private Double maxScore;
+
+    @Column(name = "confidence")
+    private Double confidence;
+
+    @Column(name = "reasoning", columnDefinition = "TEXT")
+    private String reasoning;
+
+    @Column(name = "concept")
+    private String concept;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+}
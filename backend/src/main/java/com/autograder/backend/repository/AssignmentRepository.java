@@ -1,13 +1,18 @@
 package com.autograder.backend.repository;
 
+import com.autograder.backend.dto.AssignmentSummaryDto;
 import com.autograder.backend.entity.Assignment;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface AssignmentRepository extends JpaRepository<Assignment, Long> {
@@ -28,4 +33,27 @@ public interface AssignmentRepository extends JpaRepository<Assignment, Long> {
      * @return list of assignments
      */
     List<Assignment> findByDueDateAfter(LocalDateTime dueDate);
+
+    /**
+     * Keyset page of assignment listing rows (id order), selecting only the summary columns.
+     *
+     * @param afterId  last id of the previous page (0 for the first page)
+     * @param pageable page size only; the offset is always 0
+     * @return up to one page of assignments with id greater than afterId
+     */
+    @Query("SELECT new com.autograder.backend.dto.AssignmentSummaryDto(a.id, a.title, a.totalPoints, a.dueDate, a.createdAt) " +
+            "FROM Assignment a WHERE a.id > :afterId ORDER BY a.id")
+    List<AssignmentSummaryDto> findSummariesAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+    /**
+     * Load an assignment with a write lock.
+     * Serializes creation of the assignment's statistics row, and queueing new
+     * submissions against attaching the template and key.
+     *
+     * @param id the assignment ID
+     * @return Optional containing the locked assignment if found
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT a FROM Assignment a WHERE a.id = :id")
+    Optional<Assignment> findForUpdate(@Param("id") Long id);
 }
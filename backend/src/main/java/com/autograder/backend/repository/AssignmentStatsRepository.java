@@ -0,0 +1,26 @@
+package com.autograder.backend.repository;
+
+import com.autograder.backend.entity.AssignmentStats;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface AssignmentStatsRepository extends JpaRepository<AssignmentStats, Long> {
+
+    /**
+     * Load an assignment's summary row with a write lock, so concurrent
+     * job completions apply their increments one at a time.
+     *
+     * @param assignmentId the assignment ID
+     * @return Optional containing the locked summary if it exists yet
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT st FROM AssignmentStats st WHERE st.assignmentId = :assignmentId")
+    Optional<AssignmentStats> findForUpdate(@Param("assignmentId") Long assignmentId);
+}
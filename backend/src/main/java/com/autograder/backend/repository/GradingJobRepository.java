@@ -1,11 +1,18 @@
 package com.autograder.backend.repository;
 
 import com.autograder.backend.entity.GradingJob;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -22,14 +29,36 @@ public interface GradingJobRepository extends JpaRepository<GradingJob, Long> {
     @Query("SELECT gj FROM GradingJob gj WHERE gj.submission.id = :submissionId")
     Optional<GradingJob> findBySubmissionId(@Param("submissionId") Long submissionId);
 
+    /**
+     * Find a job together with its submission in one query.
+     *
+     * @param id the grading job ID
+     * @return Optional containing the job (submission initialized, or null) if found
+     */
+    @EntityGraph(attributePaths = "submission")
+    @Query("SELECT gj FROM GradingJob gj WHERE gj.id = :id")
+    Optional<GradingJob> findWithSubmissionById(@Param("id") Long id);
+
+    /**
+     * Find many jobs together with their submissions in one query.
+     * Used by bulk status polling; ids that do not exist are simply absent.
+     *
+     * @param ids the grading job IDs
+     * @return list of jobs, in no particular order
+     */
+    @EntityGraph(attributePaths = "submission")
+    @Query("SELECT gj FROM GradingJob gj WHERE gj.id IN :ids")
+    List<GradingJob> findAllWithSubmissionByIdIn(@Param("ids") Collection<Long> ids);
+
     /**
      * Find grading jobs by status.
      * Useful for processing pending jobs or monitoring failed jobs.
+     * Standalone /run-batch records (fair-share key 'batch') are not queue jobs and are left out.
      *
      * @param status the job status (PENDING, PROCESSING, COMPLETED, FAILED)
      * @return list of grading jobs
      */
-    @Query("SELECT gj FROM GradingJob gj WHERE gj.status = :status")
+    @Query("SELECT gj FROM GradingJob gj WHERE gj.status = :status AND gj.fairShareKey <> 'batch'")
     List<GradingJob> findByStatus(@Param("status") GradingJob.JobStatus status);
 
     /**
@@ -41,13 +70,116 @@ public interface GradingJobRepository extends JpaRepository<GradingJob, Long> {
     @Query("SELECT gj FROM GradingJob gj WHERE gj.status = 'PENDING' ORDER BY gj.createdAt ASC")
     List<GradingJob> findPendingJobsOrderByCreatedAt();
 
+    /**
+     * Find the oldest pending jobs, limited to one page.
+     * Used by the job worker to pick claim candidates without loading the whole queue.
+     *
+     * @param pageable page size = number of free worker slots
+     * @return list of pending jobs
+     */
+    @Query("SELECT gj FROM GradingJob gj WHERE gj.status = 'PENDING' ORDER BY gj.createdAt ASC")
+    List<GradingJob> findPendingJobsOrderByCreatedAt(Pageable pageable);
+
+    /**
+     * Queue depth and oldest job of every (priority class, fair-share key) flow with pending work.
+     * Used by the scheduler to pick which flows to serve next.
+     *
+     * @return one row per non-empty flow
+     */
+    @Query("SELECT gj.priorityClass AS priorityClass, gj.fairShareKey AS fairShareKey, " +
+            "COUNT(gj) AS depth, MIN(gj.createdAt) AS oldestCreatedAt " +
+            "FROM GradingJob gj WHERE gj.status = 'PENDING' " +
+            "GROUP BY gj.priorityClass, gj.fairShareKey")
+    List<PendingFlow> findPendingFlows();
+
+    /**
+     * Find the oldest pending jobs of one flow.
+     *
+     * @param priorityClass the flow's class
+     * @param fairShareKey  the flow's key
+     * @param pageable      page size = number of jobs wanted
+     * @return list of pending jobs, oldest first
+     */
+    @Query("SELECT gj FROM GradingJob gj WHERE gj.status = 'PENDING' " +
+            "AND gj.priorityClass = :priorityClass AND gj.fairShareKey = :fairShareKey " +
+            "ORDER BY gj.createdAt ASC")
+    List<GradingJob> findPendingByFlow(@Param("priorityClass") GradingJob.PriorityClass priorityClass,
+                                       @Param("fairShareKey") String fairShareKey,
+                                       Pageable pageable);
+
+    /**
+     * Atomically claim a pending job for a worker.
+     * The status guard makes this a compare-and-set on the row: when several
+     * backend nodes race for the same job exactly one update succeeds.
+     *
+     * @param jobId     the job to claim
+     * @param workerId  identifier of the claiming worker
+     * @param startedAt claim time
+     * @return 1 if this worker now owns the job, 0 if another worker got it first
+     */
+    @Modifying
+    @Query("UPDATE GradingJob gj SET gj.status = :processing, gj.workerId = :workerId, gj.startedAt = :startedAt " +
+            "WHERE gj.id = :jobId AND gj.status = :pending")
+    int claimJob(@Param("jobId") Long jobId,
+                 @Param("workerId") String workerId,
+                 @Param("startedAt") LocalDateTime startedAt,
+                 @Param("pending") GradingJob.JobStatus pending,
+                 @Param("processing") GradingJob.JobStatus processing);
+
+    /**
+     * Load a job with a write lock, but only while the given worker still owns it.
+     * Fences a worker's result: once the stale-job sweep has re-queued the job (and
+     * another worker may have claimed it), the original worker finds nothing to write.
+     *
+     * @param jobId      the job
+     * @param workerId   the worker that claimed it
+     * @param processing the PROCESSING status
+     * @return Optional containing the locked job if this worker still holds it
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT gj FROM GradingJob gj WHERE gj.id = :jobId AND gj.status = :processing AND gj.workerId = :workerId")
+    Optional<GradingJob> findOwnedForUpdate(@Param("jobId") Long jobId,
+                                            @Param("workerId") String workerId,
+                                            @Param("processing") GradingJob.JobStatus processing);
+
+    /**
+     * Return jobs stuck in PROCESSING since before a cutoff to the queue.
+     * Recovers work claimed by a node that crashed mid-job.
+     *
+     * @param cutoff jobs started before this time are considered abandoned
+     * @return number of jobs re-queued
+     */
+    @Modifying
+    @Query("UPDATE GradingJob gj SET gj.status = :pending, gj.workerId = NULL, gj.startedAt = NULL " +
+            "WHERE gj.status = :processing AND gj.startedAt < :cutoff")
+    int requeueStaleJobs(@Param("cutoff") LocalDateTime cutoff,
+                         @Param("pending") GradingJob.JobStatus pending,
+                         @Param("processing") GradingJob.JobStatus processing);
+
     /**
      * Count jobs by status.
-     * Useful for monitoring system health.
+     * Useful for monitoring system health. Standalone /run-batch records are left out.
      *
      * @param status the job status
      * @return count of jobs with that status
      */
-    @Query("SELECT COUNT(gj) FROM GradingJob gj WHERE gj.status = :status")
+    @Query("SELECT COUNT(gj) FROM GradingJob gj WHERE gj.status = :status AND gj.fairShareKey <> 'batch'")
     long countByStatus(@Param("status") GradingJob.JobStatus status);
+
+    /**
+     * Count pending jobs queued before a point in time.
+     * Gives a newly queued job its position in the queue.
+     *
+     * @param createdAt creation time of the job asking
+     * @return number of PENDING jobs created earlier
+     */
+    @Query("SELECT COUNT(gj) FROM GradingJob gj WHERE gj.status = 'PENDING' AND gj.createdAt < :createdAt")
+    long countPendingCreatedBefore(@Param("createdAt") LocalDateTime createdAt);
+
+    interface PendingFlow {
+        GradingJob.PriorityClass getPriorityClass();
+        String getFairShareKey();
+        long getDepth();
+        LocalDateTime getOldestCreatedAt();
+    }
 }
@@ -1,6 +1,8 @@
 package com.autograder.backend.repository;
 
+import com.autograder.backend.dto.GradingResultSummaryDto;
 import com.autograder.backend.entity.GradingResult;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -22,6 +24,15 @@ public interface GradingResultRepository extends JpaRepository<GradingResult, Lo
     @Query("SELECT gr FROM GradingResult gr WHERE gr.job.id = :jobId")
     Optional<GradingResult> findByJobId(@Param("jobId") Long jobId);
 
+    /**
+     * Find the result for a job with the job fetched in the same query.
+     *
+     * @param jobId the grading job ID
+     * @return Optional containing the grading result if found
+     */
+    @Query("SELECT gr FROM GradingResult gr JOIN FETCH gr.job gj WHERE gj.id = :jobId")
+    Optional<GradingResult> findWithJobByJobId(@Param("jobId") Long jobId);
+
     /**
      * Find all results that require manual review.
      * Useful for instructors to review low-confidence grades.
@@ -51,8 +62,9 @@ public interface GradingResultRepository extends JpaRepository<GradingResult, Lo
     List<GradingResult> findByReviewedBy(@Param("reviewerId") Long reviewerId);
 
     /**
-     * Get statistics for an assignment: average score, min, max.
-     * Note: This returns a custom projection.
+     * Find every result for an assignment, as full entities.
+     * For statistics use {@link #aggregateByAssignmentId} or the maintained
+     * AssignmentStats summary instead of loading rows.
      *
      * @param assignmentId the assignment ID
      * @return list of results for that assignment
@@ -62,4 +74,69 @@ public interface GradingResultRepository extends JpaRepository<GradingResult, Lo
             "JOIN gj.submission s " +
             "WHERE s.assignment.id = :assignmentId")
     List<GradingResult> findResultsByAssignmentId(@Param("assignmentId") Long assignmentId);
+
+    /**
+     * Keyset page of an assignment's results (id order) without the feedback JSON and OCR text,
+     * so listing thousands of results reads only the scalar columns.
+     *
+     * @param assignmentId the assignment ID
+     * @param afterId      last result id of the previous page (0 for the first page)
+     * @param pageable     page size only; the offset is always 0
+     * @return up to one page of result summaries
+     */
+    @Query("SELECT new com.autograder.backend.dto.GradingResultSummaryDto(" +
+            "gr.id, gj.id, s.id, st.id, st.name, gr.score, gr.maxScore, gr.confidenceScore, gr.requiresReview, gr.createdAt) " +
+            "FROM GradingResult gr " +
+            "JOIN gr.job gj " +
+            "JOIN gj.submission s " +
+            "JOIN s.student st " +
+            "WHERE s.assignment.id = :assignmentId AND gr.id > :afterId " +
+            "ORDER BY gr.id")
+    List<GradingResultSummaryDto> findSummariesByAssignmentIdAfter(@Param("assignmentId") Long assignmentId,
+                                                                   @Param("afterId") Long afterId,
+                                                                   Pageable pageable);
+
+    /**
+     * Count, sum, sum of squares, min, max and review count of an assignment's scores,
+     * computed by the database in one pass.
+     *
+     * @param assignmentId the assignment ID
+     * @return the aggregate row (count 0 and null sums when there are no results)
+     */
+    @Query("SELECT COUNT(gr) AS resultCount, SUM(gr.score) AS scoreSum, SUM(gr.score * gr.score) AS scoreSumSquares, " +
+            "MIN(gr.score) AS minScore, MAX(gr.score) AS maxScore, " +
+            "SUM(CASE WHEN gr.requiresReview = true THEN 1 ELSE 0 END) AS requiresReviewCount " +
+            "FROM GradingResult gr " +
+            "JOIN gr.job gj " +
+            "JOIN gj.submission s " +
+            "WHERE s.assignment.id = :assignmentId")
+    ScoreAggregate aggregateByAssignmentId(@Param("assignmentId") Long assignmentId);
+
+    /**
+     * Number of an assignment's results per whole score percentage (0..100).
+     *
+     * @param assignmentId the assignment ID
+     * @return one row per non-empty percentage bucket
+     */
+    @Query("SELECT CAST(FLOOR(100 * gr.score / gr.maxScore) AS Integer) AS bucket, COUNT(gr) AS resultCount " +
+            "FROM GradingResult gr " +
+            "JOIN gr.job gj " +
+            "JOIN gj.submission s " +
+            "WHERE s.assignment.id = :assignmentId AND gr.maxScore > 0 " +
+            "GROUP BY CAST(FLOOR(100 * gr.score / gr.maxScore) AS Integer)")
+    List<ScoreBucket> histogramByAssignmentId(@Param("assignmentId") Long assignmentId);
+
+    interface ScoreAggregate {
+        long getResultCount();
+        Double getScoreSum();
+        Double getScoreSumSquares();
+        Double getMinScore();
+        Double getMaxScore();
+        Long getRequiresReviewCount();
+    }
+
+    interface ScoreBucket {
+        Integer getBucket();
+        long getResultCount();
+    }
 }
@@ -1,11 +1,14 @@
 package com.autograder.backend.repository;
 
+import com.autograder.backend.entity.GradingJob;
 import com.autograder.backend.entity.Submission;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -43,6 +46,17 @@ public interface SubmissionRepository extends JpaRepository<Submission, Long> {
             @Param("assignmentId") Long assignmentId,
             @Param("studentId") Long studentId);
 
+    /**
+     * Find an assignment's submissions that are still PENDING and have never been queued for grading.
+     * Used to start grading once the assignment's template and instructor key are uploaded.
+     *
+     * @param assignmentId the assignment ID
+     * @return list of submissions without a grading job
+     */
+    @Query("SELECT s FROM Submission s WHERE s.assignment.id = :assignmentId AND s.status = 'PENDING' " +
+            "AND NOT EXISTS (SELECT gj FROM GradingJob gj WHERE gj.submission = s)")
+    List<Submission> findUnqueuedByAssignmentId(@Param("assignmentId") Long assignmentId);
+
     /**
      * Find submissions by status.
      * Useful for finding pending or failed submissions.
@@ -64,4 +78,36 @@ public interface SubmissionRepository extends JpaRepository<Submission, Long> {
     Optional<Submission> findLatestByAssignmentIdAndStudentId(
             @Param("assignmentId") Long assignmentId,
             @Param("studentId") Long studentId);
+
+    /**
+     * Mark the submission graded by a job as PROCESSING.
+     * Runs in the transaction that claims the job.
+     *
+     * @param jobId      the claimed grading job
+     * @param processing the PROCESSING status
+     * @return 1 if the job has a submission, else 0
+     */
+    @Modifying
+    @Query("UPDATE Submission s SET s.status = :processing " +
+            "WHERE s.id = (SELECT gj.submission.id FROM GradingJob gj WHERE gj.id = :jobId)")
+    int markProcessing(@Param("jobId") Long jobId,
+                       @Param("processing") Submission.SubmissionStatus processing);
+
+    /**
+     * Return the submissions of stale PROCESSING jobs to PENDING.
+     * Must run just before GradingJobRepository.requeueStaleJobs, with the same cutoff.
+     *
+     * @param cutoff        jobs started before this time are considered abandoned
+     * @param pending       the PENDING submission status
+     * @param processing    the PROCESSING submission status
+     * @param jobProcessing the PROCESSING job status
+     * @return number of submissions reset
+     */
+    @Modifying
+    @Query("UPDATE Submission s SET s.status = :pending WHERE s.status = :processing AND s.id IN " +
+            "(SELECT gj.submission.id FROM GradingJob gj WHERE gj.status = :jobProcessing AND gj.startedAt < :cutoff)")
+    int resetStaleProcessing(@Param("cutoff") LocalDateTime cutoff,
+                             @Param("pending") Submission.SubmissionStatus pending,
+                             @Param("processing") Submission.SubmissionStatus processing,
+                             @Param("jobProcessing") GradingJob.JobStatus jobProcessing);
 }
@@ -1,9 +1,14 @@
 package com.autograder.backend.repository;
 
+import com.autograder.backend.dto.UserSummaryDto;
 import com.autograder.backend.entity.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -26,4 +31,15 @@ public interface UserRepository extends JpaRepository<User, Long> {
      * @return true if user exists, false otherwise
      */
     boolean existsByEmail(String email);
+
+    /**
+     * Keyset page of user listing rows (id order); the password column is never selected.
+     *
+     * @param afterId  last id of the previous page (0 for the first page)
+     * @param pageable page size only; the offset is always 0
+     * @return up to one page of users with id greater than afterId
+     */
+    @Query("SELECT new com.autograder.backend.dto.UserSummaryDto(u.id, u.email, u.name, u.role, u.createdAt) " +
+            "FROM User u WHERE u.id > :afterId ORDER BY u.id")
+    List<UserSummaryDto> findSummariesAfter(@Param("afterId") Long afterId, Pageable pageable);
 }
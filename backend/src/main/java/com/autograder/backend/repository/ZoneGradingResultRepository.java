@@ -0,0 +1,22 @@
+package com.autograder.backend.repository;
+
+import com.autograder.backend.entity.ZoneGradingResult;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface ZoneGradingResultRepository extends JpaRepository<ZoneGradingResult, Long> {
+
+    /**
+     * Find the per-zone results of a grading job, in zone order.
+     *
+     * @param jobId the grading job ID
+     * @return list of zone results
+     */
+    @Query("SELECT zr FROM ZoneGradingResult zr WHERE zr.job.id = :jobId ORDER BY zr.zoneId")
+    List<ZoneGradingResult> findByJobId(@Param("jobId") Long jobId);
+}
@@ -0,0 +1,263 @@
+package com.autograder.backend.service;
+
+import com.autograder.backend.dto.BatchGradeRowDto;
+import com.autograder.backend.dto.ZoneGradeDto;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * AdaptiveZoneBatcher
+ *
+ * Packs pending zone-grading requests — from one paper and from all concurrent papers —
+ * into /api/grade/batch-vision calls. Zones are grouped per rubric; a group is sent when
+ * it reaches the current batch size or byte budget, or when its oldest zone has waited
+ * {@code grading.batching.linger-ms}.
+ *
+ * The batch size adapts AIMD-style to observed latency: a full batch that returns under
+ * {@code grading.batching.target-latency-ms} grows the size by one, a slow or failed batch
+ * halves it. Each batch is one model call, so it takes a single permit from the shared
+ * rate limiter. No max score is sent per zone; like single-zone grading, the engine takes
+ * it from the rubric and reports it back in each row. A caller that cancels (client gone,
+ * paper failed) takes its zone out of the queue.
+ */
+@Service
+@Slf4j
+public class AdaptiveZoneBatcher {
+
+    private record Pending(String key,
+                           String studentId,
+                           String zoneId,
+                           byte[] image,
+                           byte[] referenceImage,
+                           String rubric,
+                           long bytes,
+                           long enqueuedAt,
+                           Sinks.One<ZoneGradeDto> result) {
+    }
+
+    private final MLServiceClient mlServiceClient;
+    private final TokenBucketRateLimiter rateLimiter;
+    private final boolean enabled;
+    private final int minBatchSize;
+    private final int maxBatchSize;
+    private final long maxBatchBytes;
+    private final long lingerNanos;
+    private final long targetLatencyNanos;
+    private final int maxConcurrentBatches;
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<String, Deque<Pending>> queues = new HashMap<>();  // guarded by this
+    private int batchSize;                                               // guarded by this
+    private int batchesInFlight;                                         // guarded by this
+    private final ScheduledExecutorService ticker;
+
+    public AdaptiveZoneBatcher(MLServiceClient mlServiceClient,
+                               TokenBucketRateLimiter gradingRateLimiter,
+                               @Value("${grading.batching.enabled:false}") boolean enabled,
+                               @Value("${grading.batching.min-size:1}") int minBatchSize,
+                               @Value("${grading.batching.max-size:16}") int maxBatchSize,
+                               @Value("${grading.batching.max-bytes:8388608}") long maxBatchBytes,
+                               @Value("${grading.batching.linger-ms:250}") long lingerMs,
+                               @Value("${grading.batching.target-latency-ms:30000}") long targetLatencyMs,
+                               @Value("${grading.zone.max-in-flight:4}") int maxConcurrentBatches) {
+        this.mlServiceClient = mlServiceClient;
+        this.rateLimiter = gradingRateLimiter;
+        this.enabled = enabled;
+        this.minBatchSize = Math.max(1, minBatchSize);
+        this.maxBatchSize = Math.max(this.minBatchSize, maxBatchSize);
+        this.maxBatchBytes = maxBatchBytes;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMs);
+        this.targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(targetLatencyMs);
+        this.maxConcurrentBatches = Math.max(1, maxConcurrentBatches);
+        this.batchSize = this.minBatchSize;
+
+        if (enabled) {
+            this.ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "zone-batcher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long tickMs = Math.max(10, lingerMs / 2);
+            ticker.scheduleWithFixedDelay(this::drain, tickMs, tickMs, TimeUnit.MILLISECONDS);
+            log.info("Zone batching enabled: size {}..{}, max-bytes={}, linger={}ms, target-latency={}ms",
+                    this.minBatchSize, this.maxBatchSize, maxBatchBytes, lingerMs, targetLatencyMs);
+        } else {
+            this.ticker = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queue one zone for batch grading.
+     *
+     * @return the normalized zone result (same shape as ZoneGradingExecutor.normalize)
+     */
+    public Mono<ZoneGradeDto> submit(String studentId,
+                                     String zoneId,
+                                     byte[] image,
+                                     byte[] referenceImage,
+                                     String rubric) {
+        return Mono.defer(() -> {
+            Sinks.One<ZoneGradeDto> result = Sinks.one();
+            long bytes = encodedLength(image) + encodedLength(referenceImage);
+            Pending pending = new Pending("z" + sequence.incrementAndGet(), studentId, zoneId,
+                    image, referenceImage, rubric, bytes, System.nanoTime(), result);
+            synchronized (this) {
+                queues.computeIfAbsent(rubric, r -> new ArrayDeque<>()).add(pending);
+            }
+            drain();
+            return result.asMono().doOnCancel(() -> withdraw(pending));
+        });
+    }
+
+    /** Drop a zone nobody waits for any more, unless it is already part of a batch. */
+    private synchronized void withdraw(Pending pending) {
+        Deque<Pending> queue = queues.get(pending.rubric());
+        if (queue != null && queue.remove(pending) && queue.isEmpty()) {
+            queues.remove(pending.rubric());
+        }
+    }
+
+    /**
+     * Send every group that is full, over its byte budget, or has lingered long enough,
+     * as long as batch slots are free.
+     */
+    private void drain() {
+        List<List<Pending>> ready = new ArrayList<>();
+        synchronized (this) {
+            long now = System.nanoTime();
+            Iterator<Deque<Pending>> groups = queues.values().iterator();
+            while (groups.hasNext() && batchesInFlight < maxConcurrentBatches) {
+                Deque<Pending> queue = groups.next();
+                while (!queue.isEmpty() && batchesInFlight < maxConcurrentBatches && isReady(queue, now)) {
+                    ready.add(takeBatch(queue));
+                    batchesInFlight++;
+                }
+                if (queue.isEmpty()) {
+                    groups.remove();
+                }
+            }
+        }
+        ready.forEach(this::dispatch);
+    }
+
+    private boolean isReady(Deque<Pending> queue, long now) {
+        if (queue.size() >= batchSize || now - queue.peekFirst().enqueuedAt() >= lingerNanos) {
+            return true;
+        }
+        long bytes = 0;
+        for (Pending pending : queue) {
+            bytes += pending.bytes();
+        }
+        return bytes >= maxBatchBytes;
+    }
+
+    private List<Pending> takeBatch(Deque<Pending> queue) {
+        List<Pending> batch = new ArrayList<>(batchSize);
+        long bytes = 0;
+        while (!queue.isEmpty() && batch.size() < batchSize) {
+            Pending next = queue.peekFirst();
+            if (!batch.isEmpty() && bytes + next.bytes() > maxBatchBytes) {
+                break;
+            }
+            batch.add(queue.pollFirst());
+            bytes += next.bytes();
+        }
+        return batch;
+    }
+
+    private void dispatch(List<Pending> batch) {
+        Map<String, Object> zones = new LinkedHashMap<>();
+        for (Pending pending : batch) {
+            Map<String, Object> zone = new HashMap<>();
+            zone.put("image_b64", pending.image());
+            zone.put("reference_image_b64", pending.referenceImage());
+            zones.put(pending.key(), zone);
+        }
+        String studentId = batch.stream().map(Pending::studentId).distinct().count() == 1
+                ? batch.get(0).studentId()
+                : "batch";
+        String rubric = batch.get(0).rubric();
+        log.info("Grading batch of {} zones (target size {})", batch.size(), batchSize);
+
+        long[] startedAt = new long[1];
+        rateLimiter.acquireReactive()
+                .then(Mono.defer(() -> {
+                    startedAt[0] = System.nanoTime();
+                    return mlServiceClient.batchGradeReactive(studentId, zones, rubric);
+                }))
+                .subscribe(
+                        rows -> {
+                            complete(batch, rows);
+                            onBatchDone(batch.size(), System.nanoTime() - startedAt[0], false);
+                        },
+                        error -> {
+                            batch.forEach(p -> p.result().tryEmitError(error));
+                            onBatchDone(batch.size(), System.nanoTime() - startedAt[0], true);
+                        });
+    }
+
+    private void complete(List<Pending> batch, List<BatchGradeRowDto> rows) {
+        Map<String, BatchGradeRowDto> byKey = new HashMap<>();
+        for (BatchGradeRowDto row : rows) {
+            byKey.put(row.zoneId(), row);
+        }
+        for (Pending pending : batch) {
+            BatchGradeRowDto row = byKey.get(pending.key());
+            if (row == null) {
+                pending.result().tryEmitError(new IllegalStateException("Zone " + pending.zoneId() + " missing from batch response"));
+                continue;
+            }
+            pending.result().tryEmitValue(new ZoneGradeDto(pending.studentId(), pending.zoneId(),
+                    row.score(), row.maxScore(), row.confidence(), row.reasoning(), row.concept()));
+        }
+    }
+
+    private void onBatchDone(int size, long latencyNanos, boolean failed) {
+        synchronized (this) {
+            batchesInFlight--;
+            if (failed || latencyNanos > targetLatencyNanos) {
+                batchSize = Math.max(minBatchSize, batchSize / 2);
+            } else if (size >= batchSize) {
+                batchSize = Math.min(maxBatchSize, batchSize + 1);
+            }
+        }
+        log.debug("Batch of {} took {} ms; next batch size {}", size, Duration.ofNanos(latencyNanos).toMillis(), batchSize);
+        drain();
+    }
+
+    /**
+     * Size of the value once base64-encoded into the request body.
+     */
+    private static long encodedLength(byte[] value) {
+        return value != null ? 4L * ((value.length + 2) / 3) : 0;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+        }
+    }
+}
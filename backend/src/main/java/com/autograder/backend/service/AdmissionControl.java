@@ -0,0 +1,160 @@
+package com.autograder.backend.service;
+
+import com.autograder.backend.entity.GradingJob;
+import com.autograder.backend.repository.GradingJobRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * AdmissionControl
+ *
+ * Load shedding for the upload endpoints during deadline bursts. Requests are admitted or
+ * refused before their body is read, so a refused upload costs neither a thread for the
+ * transfer nor disk:
+ * - uploads: at most {@code grading.admission.max-concurrent-uploads} request bodies are being received at once
+ * - queue: new submissions are refused while {@code grading.admission.max-queued-jobs} jobs are PENDING
+ * - runs: at most {@code grading.admission.max-concurrent-runs} /run and /run-stream pipelines are in flight;
+ *   a /run-batch holds {@code grading.admission.batch-run-permits} of them, since it grades many papers at once
+ * Refusals are answered with 429 and a Retry-After (see AdmissionControlFilter).
+ * Admitted multipart parts are staged on disk ({@code spring.servlet.multipart.location}), not held in heap.
+ */
+@Service
+@Slf4j
+public class AdmissionControl {
+
+    public enum Reason {
+        UPLOADS,
+        QUEUE,
+        RUNS
+    }
+
+    private final GradingJobRepository gradingJobRepository;
+    private final MeterRegistry meterRegistry;
+    private final Semaphore uploads;
+    private final Semaphore runs;
+    private final int maxConcurrentUploads;
+    private final int maxConcurrentRuns;
+    private final int batchRunPermits;
+    private final long maxQueuedJobs;
+    private final Duration retryAfter;
+    private final long pendingCountTtlNanos;
+
+    private final AtomicLong pendingJobs = new AtomicLong();
+    private final AtomicLong pendingCountedAt = new AtomicLong(Long.MIN_VALUE);
+
+    public AdmissionControl(GradingJobRepository gradingJobRepository,
+                            MeterRegistry meterRegistry,
+                            @Value("${grading.admission.max-concurrent-uploads:32}") int maxConcurrentUploads,
+                            @Value("${grading.admission.max-concurrent-runs:16}") int maxConcurrentRuns,
+                            @Value("${grading.admission.batch-run-permits:4}") int batchRunPermits,
+                            @Value("${grading.admission.max-queued-jobs:2000}") long maxQueuedJobs,
+                            @Value("${grading.admission.retry-after-seconds:5}") long retryAfterSeconds) {
+        this.gradingJobRepository = gradingJobRepository;
+        this.meterRegistry = meterRegistry;
+        this.maxConcurrentUploads = maxConcurrentUploads;
+        this.maxConcurrentRuns = maxConcurrentRuns;
+        this.batchRunPermits = Math.max(1, Math.min(batchRunPermits, maxConcurrentRuns));
+        this.uploads = new Semaphore(maxConcurrentUploads);
+        this.runs = new Semaphore(maxConcurrentRuns);
+        this.maxQueuedJobs = maxQueuedJobs;
+        this.retryAfter = Duration.ofSeconds(Math.max(1, retryAfterSeconds));
+        this.pendingCountTtlNanos = Duration.ofSeconds(1).toNanos();
+
+        Gauge.builder("grading.admission.uploads.active", uploads, s -> maxConcurrentUploads - s.availablePermits())
+                .description("Upload bodies currently being received")
+                .register(meterRegistry);
+        Gauge.builder("grading.admission.runs.active", runs, s -> maxConcurrentRuns - s.availablePermits())
+                .description("Run permits held by in-flight /run, /run-stream and /run-batch pipelines")
+                .register(meterRegistry);
+        Gauge.builder("grading.queue.pending", pendingJobs, AtomicLong::get)
+                .description("PENDING grading jobs (refreshed at most once a second)")
+                .register(meterRegistry);
+    }
+
+    public boolean tryAcquireUpload() {
+        return admitted(uploads.tryAcquire(), Reason.UPLOADS);
+    }
+
+    public void releaseUpload() {
+        uploads.release();
+    }
+
+    public boolean tryAcquireRun(int permits) {
+        return admitted(runs.tryAcquire(permits), Reason.RUNS);
+    }
+
+    public void releaseRun(int permits) {
+        runs.release(permits);
+    }
+
+    /**
+     * Run permits one /run-batch request holds (never more than the run limit, so it can be admitted).
+     */
+    public int getBatchRunPermits() {
+        return batchRunPermits;
+    }
+
+    /**
+     * @return true if the grading queue has room for another job
+     */
+    public boolean admitJob() {
+        return admitted(pendingJobs() < maxQueuedJobs, Reason.QUEUE);
+    }
+
+    /**
+     * 1-based position of a PENDING job among the jobs waiting before it, reported to clients
+     * as {@code queuePositionEstimate}. Only an estimate: it counts in FIFO order, but the
+     * scheduler serves flows weighted-fair, so interactive jobs and small assignments
+     * overtake large backlogs.
+     */
+    public long queuePosition(GradingJob job) {
+        return gradingJobRepository.countPendingCreatedBefore(job.getCreatedAt()) + 1;
+    }
+
+    /**
+     * Suggested wait before retrying a refused request.
+     */
+    public Duration retryAfter(Reason reason) {
+        if (reason == Reason.QUEUE) {
+            // Scale with how far over the limit the queue is; the worker drains it in order
+            long overflow = Math.max(1, pendingJobs() - maxQueuedJobs + 1);
+            return retryAfter.multipliedBy(Math.min(12, overflow));
+        }
+        return retryAfter;
+    }
+
+    /**
+     * PENDING job count, re-read from the database at most once a second so a burst
+     * of admissions costs one count query per second rather than one per request.
+     */
+    private long pendingJobs() {
+        long countedAt = pendingCountedAt.get();
+        long now = System.nanoTime();
+        if (countedAt == Long.MIN_VALUE || now - countedAt > pendingCountTtlNanos) {
+            if (pendingCountedAt.compareAndSet(countedAt, now)) {
+                pendingJobs.set(gradingJobRepository.countByStatus(GradingJob.JobStatus.PENDING));
+            }
+        }
+        return pendingJobs.get();
+    }
+
+    private boolean admitted(boolean admitted, Reason reason) {
+        if (!admitted) {
+            log.warn("Admission refused: {}", reason);
+            Counter.builder("grading.admission.rejected")
+                    .description("Requests refused by admission control")
+                    .tag("reason", reason.name().toLowerCase())
+                    .register(meterRegistry)
+                    .increment();
+        }
+        return admitted;
+    }
+}
@@ -0,0 +1,193 @@
+package com.autograder.backend.service;
+
+import com.autograder.backend.dto.AssignmentStatsDto;
+import com.autograder.backend.entity.AssignmentStats;
+import com.autograder.backend.entity.GradingResult;
+import com.autograder.backend.repository.AssignmentRepository;
+import com.autograder.backend.repository.AssignmentStatsRepository;
+import com.autograder.backend.repository.GradingResultRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * AssignmentStatsService
+ *
+ * Keeps one AssignmentStats row per assignment up to date as results are saved, so
+ * /api/assignments/{id}/stats reads a single row instead of scanning results.
+ * The row is first built (or rebuilt) from SQL aggregates over the assignment's results;
+ * after that every new result is folded in by the transaction that saves it.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class AssignmentStatsService {
+
+    private static final double[] PERCENTILES = {0.25, 0.50, 0.75, 0.90};
+
+    private final AssignmentStatsRepository assignmentStatsRepository;
+    private final AssignmentRepository assignmentRepository;
+    private final GradingResultRepository gradingResultRepository;
+
+    /**
+     * Fold a newly saved result into its assignment's summary.
+     * Runs in the transaction that saves the result; the summary row stays locked until it commits.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordResult(Long assignmentId, GradingResult result) {
+        Optional<AssignmentStats> existing = lockStats(assignmentId);
+        if (existing.isPresent()) {
+            add(existing.get(), result);
+        } else {
+            // The aggregate queries flush the pending result insert first, so it is already counted
+            assignmentStatsRepository.save(compute(assignmentId));
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public AssignmentStatsDto getStats(Long assignmentId) {
+        return toDto(assignmentStatsRepository.findById(assignmentId)
+                .orElseGet(() -> compute(assignmentId)));
+    }
+
+    /**
+     * Recompute an assignment's summary from its results.
+     * The summary row is locked before the aggregates run, so a result committed meanwhile
+     * waits and is folded into the rebuilt row instead of being overwritten by it.
+     */
+    @Transactional
+    public AssignmentStatsDto rebuild(Long assignmentId) {
+        Optional<AssignmentStats> existing = lockStats(assignmentId);
+        if (existing.isEmpty() && assignmentRepository.findById(assignmentId).isEmpty()) {
+            throw new RuntimeException("Assignment not found");
+        }
+        AssignmentStats computed = compute(assignmentId);
+        AssignmentStats stats = assignmentStatsRepository.save(existing.map(row -> copy(computed, row)).orElse(computed));
+        log.info("Rebuilt statistics for assignment {} ({} results)", assignmentId, stats.getResultCount());
+        return toDto(stats);
+    }
+
+    /**
+     * Lock an assignment's summary row. Only one transaction may create a missing row:
+     * if there is none yet, wait on the assignment's lock, then look again.
+     */
+    private Optional<AssignmentStats> lockStats(Long assignmentId) {
+        Optional<AssignmentStats> existing = assignmentStatsRepository.findForUpdate(assignmentId);
+        if (existing.isEmpty()) {
+            assignmentRepository.findForUpdate(assignmentId);
+            existing = assignmentStatsRepository.findForUpdate(assignmentId);
+        }
+        return existing;
+    }
+
+    private AssignmentStats compute(Long assignmentId) {
+        GradingResultRepository.ScoreAggregate aggregate = gradingResultRepository.aggregateByAssignmentId(assignmentId);
+        AssignmentStats stats = new AssignmentStats();
+        stats.setAssignmentId(assignmentId);
+        stats.setResultCount(aggregate.getResultCount());
+        stats.setScoreSum(orZero(aggregate.getScoreSum()));
+        stats.setScoreSumSquares(orZero(aggregate.getScoreSumSquares()));
+        stats.setMinScore(aggregate.getMinScore());
+        stats.setMaxScore(aggregate.getMaxScore());
+        stats.setRequiresReviewCount(aggregate.getRequiresReviewCount() != null ? aggregate.getRequiresReviewCount() : 0);
+
+        long[] histogram = new long[AssignmentStats.BUCKETS];
+        for (GradingResultRepository.ScoreBucket bucket : gradingResultRepository.histogramByAssignmentId(assignmentId)) {
+            histogram[clampBucket(bucket.getBucket())] += bucket.getResultCount();
+        }
+        stats.setPctHistogram(histogram);
+        return stats;
+    }
+
+    private static AssignmentStats copy(AssignmentStats from, AssignmentStats to) {
+        to.setResultCount(from.getResultCount());
+        to.setScoreSum(from.getScoreSum());
+        to.setScoreSumSquares(from.getScoreSumSquares());
+        to.setMinScore(from.getMinScore());
+        to.setMaxScore(from.getMaxScore());
+        to.setRequiresReviewCount(from.getRequiresReviewCount());
+        to.setPctHistogram(from.getPctHistogram());
+        return to;
+    }
+
+    private static void add(AssignmentStats stats, GradingResult result) {
+        double score = orZero(result.getScore());
+        stats.setResultCount(stats.getResultCount() + 1);
+        stats.setScoreSum(stats.getScoreSum() + score);
+        stats.setScoreSumSquares(stats.getScoreSumSquares() + score * score);
+        stats.setMinScore(stats.getMinScore() == null ? score : Math.min(stats.getMinScore(), score));
+        stats.setMaxScore(stats.getMaxScore() == null ? score : Math.max(stats.getMaxScore(), score));
+        if (Boolean.TRUE.equals(result.getRequiresReview())) {
+            stats.setRequiresReviewCount(stats.getRequiresReviewCount() + 1);
+        }
+        if (result.getMaxScore() != null && result.getMaxScore() > 0) {
+            // New array rather than in-place increment, so the change is seen by dirty checking
+            long[] histogram = stats.getPctHistogram().clone();
+            histogram[bucket(score, result.getMaxScore())]++;
+            stats.setPctHistogram(histogram);
+        }
+    }
+
+    private static AssignmentStatsDto toDto(AssignmentStats stats) {
+        long count = stats.getResultCount();
+        if (count == 0) {
+            return new AssignmentStatsDto(stats.getAssignmentId(), 0, null, null, null, null, null, Map.of(), stats.getUpdatedAt());
+        }
+        double mean = stats.getScoreSum() / count;
+        double variance = Math.max(0.0, stats.getScoreSumSquares() / count - mean * mean);
+
+        Map<String, Double> percentiles = new LinkedHashMap<>();
+        for (double p : PERCENTILES) {
+            Double value = percentile(stats.getPctHistogram(), p);
+            if (value != null) {
+                percentiles.put("p" + Math.round(p * 100), value);
+            }
+        }
+        return new AssignmentStatsDto(stats.getAssignmentId(), count, mean, stats.getMinScore(), stats.getMaxScore(),
+                Math.sqrt(variance), (double) stats.getRequiresReviewCount() / count, percentiles, stats.getUpdatedAt());
+    }
+
+    /**
+     * The p-quantile of a percentage histogram, interpolated linearly inside the bucket it falls in.
+     */
+    static Double percentile(long[] histogram, double p) {
+        long total = 0;
+        for (long n : histogram) {
+            total += n;
+        }
+        if (total == 0) {
+            return null;
+        }
+        double rank = p * total;
+        long seen = 0;
+        for (int bucket = 0; bucket < histogram.length; bucket++) {
+            long n = histogram[bucket];
+            if (n > 0 && seen + n >= rank) {
+                return Math.min(100.0, bucket + (rank - seen) / n);
+            }
+            seen += n;
+        }
+        return 100.0;
+    }
+
+    /**
+     * Histogram bucket of a score: its whole percentage of the maximum, as the histogram query computes it.
+     */
+    static int bucket(double score, double maxScore) {
+        return clampBucket((int) Math.floor(100 * score / maxScore));
+    }
+
+    private static int clampBucket(Integer bucket) {
+        return bucket == null ? 0 : Math.max(0, Math.min(AssignmentStats.BUCKETS - 1, bucket));
+    }
+
+    private static double orZero(Double value) {
+        return value != null ? value : 0.0;
+    }
+}
@@ -0,0 +1,104 @@
+package com.autograder.backend.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * FileSystemBlobStore
+ *
+ * SubmissionBlobStore on the local disk under {@code submission.store.dir}:
+ * - a blob with digest {@code abcdef...} lives at {@code ab/cd/abcdef...}, so no directory grows past 65536 entries
+ * - uploads stream into {@code tmp/} while being hashed, are fsynced, then renamed into place;
+ *   readers never see a partial blob
+ * - if the digest is already stored, the temp file is dropped and the existing blob is reused
+ */
+@Service
+@Slf4j
+public class FileSystemBlobStore implements SubmissionBlobStore {
+
+    private static final Pattern DIGEST = Pattern.compile("[0-9a-f]{64}");
+
+    private final Path root;
+    private final Path tmpDir;
+
+    public FileSystemBlobStore(@Value("${submission.store.dir:${file.upload-dir}/blobs}") String dir) {
+        this.root = Paths.get(dir).toAbsolutePath().normalize();
+        this.tmpDir = root.resolve("tmp");
+    }
+
+    @Override
+    public StoredBlob store(InputStream content) throws IOException {
+        Files.createDirectories(tmpDir);
+        Path tmp = Files.createTempFile(tmpDir, "upload-", ".part");
+        MessageDigest sha256 = sha256();
+        long size;
+        try (DigestInputStream in = new DigestInputStream(content, sha256);
+             FileChannel out = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            size = out.transferFrom(Channels.newChannel(in), 0, Long.MAX_VALUE);
+            out.force(true);
+        } catch (IOException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+
+        String digest = HexFormat.of().formatHex(sha256.digest());
+        Path target = pathOf(digest);
+        if (Files.exists(target)) {
+            Files.deleteIfExists(tmp);
+            return new StoredBlob(digest, size, target, true);
+        }
+
+        Files.createDirectories(target.getParent());
+        try {
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException e) {
+            // A concurrent upload of the same bytes got there first
+            Files.deleteIfExists(tmp);
+            return new StoredBlob(digest, size, target, true);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        log.debug("Stored blob {} ({} bytes)", digest, size);
+        return new StoredBlob(digest, size, target, false);
+    }
+
+    @Override
+    public Optional<Path> find(String digest) {
+        if (digest == null || !DIGEST.matcher(digest).matches()) {
+            return Optional.empty();
+        }
+        Path path = pathOf(digest);
+        return Files.isRegularFile(path) ? Optional.of(path) : Optional.empty();
+    }
+
+    private Path pathOf(String digest) {
+        return root.resolve(digest.substring(0, 2)).resolve(digest.substring(2, 4)).resolve(digest);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.autograder.backend.service;
+
+import com.autograder.backend.entity.GradingJob;
+import com.autograder.backend.entity.GradingJob.PriorityClass;
+import com.autograder.backend.repository.GradingJobRepository;
+import com.autograder.backend.repository.GradingJobRepository.PendingFlow;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * GradingJobScheduler
+ *
+ * Decides which PENDING jobs the worker claims next, so one large assignment cannot hold
+ * the queue hostage during a deadline burst. Pending jobs are grouped into flows by
+ * (priority class, fair-share key); jobs within a flow are served oldest first.
+ *
+ * Flows are served by stride scheduling (weighted fair queuing): every flow carries a pass
+ * value, the flow with the lowest pass is served next, and serving a job advances the pass
+ * by 1 / weight of its class ({@code grading.scheduler.weight.interactive|standard|bulk}).
+ * A flow that becomes pending starts at the current minimum pass, so idle time is not
+ * banked. To keep low-weight flows from starving behind a steady stream of interactive
+ * work, the head job's wait is credited against the pass: every
+ * {@code grading.scheduler.aging-seconds} of waiting is worth one BULK job's charge, up to
+ * {@code grading.scheduler.max-aging-strides} charges. The cap keeps a long backlog (whose
+ * head is always old) from outranking fresh interactive work for more than a few jobs.
+ *
+ * Pass values are kept in memory on each node and only charged for jobs this node actually
+ * claims; claims stay the conditional UPDATE in GradingJobRepository.claimJob. With several
+ * nodes, fairness therefore holds per node and approximately across the cluster.
+ */
+@Service
+public class GradingJobScheduler {
+
+    private record Flow(PriorityClass priorityClass, String fairShareKey) {
+        static Flow of(GradingJob job) {
+            return new Flow(job.getPriorityClass(), job.getFairShareKey());
+        }
+    }
+
+    private final GradingJobRepository gradingJobRepository;
+    private final MeterRegistry meterRegistry;
+    private final Map<PriorityClass, Double> strides = new EnumMap<>(PriorityClass.class);
+    private final Map<PriorityClass, AtomicLong> depths = new EnumMap<>(PriorityClass.class);
+    private final double agingSeconds;
+    private final double maxAgingCredit;
+
+    private final Map<Flow, Double> passes = new HashMap<>();
+    private double globalPass;
+
+    public GradingJobScheduler(GradingJobRepository gradingJobRepository,
+                               MeterRegistry meterRegistry,
+                               @Value("${grading.scheduler.weight.interactive:16}") double interactiveWeight,
+                               @Value("${grading.scheduler.weight.standard:4}") double standardWeight,
+                               @Value("${grading.scheduler.weight.bulk:1}") double bulkWeight,
+                               @Value("${grading.scheduler.aging-seconds:60}") double agingSeconds,
+                               @Value("${grading.scheduler.max-aging-strides:2}") double maxAgingStrides) {
+        this.gradingJobRepository = gradingJobRepository;
+        this.meterRegistry = meterRegistry;
+        this.strides.put(PriorityClass.INTERACTIVE, 1.0 / Math.max(interactiveWeight, 0.001));
+        this.strides.put(PriorityClass.STANDARD, 1.0 / Math.max(standardWeight, 0.001));
+        this.strides.put(PriorityClass.BULK, 1.0 / Math.max(bulkWeight, 0.001));
+        this.agingSeconds = agingSeconds > 0 ? agingSeconds : Double.POSITIVE_INFINITY;
+        this.maxAgingCredit = Math.max(0, maxAgingStrides) * strides.get(PriorityClass.BULK);
+
+        for (PriorityClass priorityClass : PriorityClass.values()) {
+            AtomicLong depth = new AtomicLong();
+            depths.put(priorityClass, depth);
+            Gauge.builder("grading.queue.depth", depth, AtomicLong::get)
+                    .description("PENDING grading jobs per priority class, as of the last poll")
+                    .tag("class", priorityClass.name().toLowerCase())
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * Pick up to {@code capacity} pending jobs in the order they should be claimed.
+     * Nothing is charged until {@link #onClaimed} is called for a job.
+     */
+    public synchronized List<GradingJob> pick(int capacity) {
+        if (capacity <= 0) {
+            return List.of();
+        }
+
+        List<PendingFlow> pending = gradingJobRepository.findPendingFlows();
+        refresh(pending);
+        if (pending.isEmpty()) {
+            return List.of();
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        Map<Flow, Double> simulated = new HashMap<>();
+        Map<Flow, Long> remaining = new HashMap<>();
+        Map<Flow, Double> credits = new HashMap<>();
+        for (PendingFlow row : pending) {
+            Flow flow = new Flow(row.getPriorityClass(), row.getFairShareKey());
+            simulated.put(flow, passes.get(flow));
+            remaining.put(flow, row.getDepth());
+            credits.put(flow, agingCredit(row.getOldestCreatedAt(), now));
+        }
+
+        // Replay the stride schedule capacity steps ahead; a flow's jobs are loaded when it is first chosen
+        Map<Flow, Deque<GradingJob>> heads = new HashMap<>();
+        List<GradingJob> picked = new ArrayList<>(capacity);
+        while (picked.size() < capacity) {
+            Flow next = null;
+            double best = Double.POSITIVE_INFINITY;
+            for (Map.Entry<Flow, Double> entry : simulated.entrySet()) {
+                if (remaining.get(entry.getKey()) <= 0) {
+                    continue;
+                }
+                double effective = entry.getValue() - credits.get(entry.getKey());
+                if (effective < best) {
+                    best = effective;
+                    next = entry.getKey();
+                }
+            }
+            if (next == null) {
+                break;
+            }
+
+            Deque<GradingJob> queue = heads.computeIfAbsent(next, flow -> new ArrayDeque<>(
+                    gradingJobRepository.findPendingByFlow(flow.priorityClass(), flow.fairShareKey(),
+                            PageRequest.ofSize(capacity))));
+            GradingJob job = queue.poll();
+            if (job == null) { // the rest of the flow was claimed elsewhere meanwhile
+                remaining.put(next, 0L);
+                continue;
+            }
+            picked.add(job);
+            remaining.put(next, queue.isEmpty() ? 0L : remaining.get(next) - 1);
+            simulated.merge(next, stride(next), Double::sum);
+            GradingJob nextHead = queue.peek();
+            credits.put(next, nextHead != null ? agingCredit(nextHead.getCreatedAt(), now) : 0.0);
+        }
+        return picked;
+    }
+
+    /**
+     * Charge a claimed job to its flow and record how long it waited.
+     */
+    public synchronized void onClaimed(GradingJob job) {
+        Flow flow = Flow.of(job);
+        passes.put(flow, passes.getOrDefault(flow, globalPass) + stride(flow));
+
+        if (job.getCreatedAt() != null) {
+            Timer.builder("grading.queue.wait")
+                    .description("Time a grading job spent PENDING before a worker claimed it")
+                    .tag("class", flow.priorityClass().name().toLowerCase())
+                    .register(meterRegistry)
+                    .record(Duration.between(job.getCreatedAt(), LocalDateTime.now()));
+        }
+    }
+
+    /**
+     * Join new flows at the current minimum pass, forget flows that drained, update gauges.
+     */
+    private void refresh(List<PendingFlow> pending) {
+        Set<Flow> active = new HashSet<>();
+        Map<PriorityClass, Long> depthByClass = new EnumMap<>(PriorityClass.class);
+        for (PendingFlow row : pending) {
+            active.add(new Flow(row.getPriorityClass(), row.getFairShareKey()));
+            depthByClass.merge(row.getPriorityClass(), row.getDepth(), Long::sum);
+        }
+        depths.forEach((priorityClass, depth) -> depth.set(depthByClass.getOrDefault(priorityClass, 0L)));
+
+        passes.keySet().retainAll(active);
+        passes.values().stream().mapToDouble(Double::doubleValue).min().ifPresent(min -> globalPass = min);
+        for (Flow flow : active) {
+            passes.putIfAbsent(flow, globalPass);
+        }
+    }
+
+    private double agingCredit(LocalDateTime oldest, LocalDateTime now) {
+        if (oldest == null) {
+            return 0;
+        }
+        double waitedSeconds = Math.max(0, Duration.between(oldest, now).toMillis() / 1000.0);
+        return Math.min(maxAgingCredit, waitedSeconds / agingSeconds * strides.get(PriorityClass.BULK));
+    }
+
+    private double stride(Flow flow) {
+        return strides.getOrDefault(flow.priorityClass(), strides.get(PriorityClass.STANDARD));
+    }
+}
@@ -0,0 +1,116 @@
+package com.autograder.backend.service;
+
+import com.autograder.backend.dto.GradingPipelineResultDto;
+import com.autograder.backend.entity.GradingJob;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * GradingJobWorker
+ *
+ * Drains the PENDING GradingJob queue on a small worker pool.
+ * Every node asks GradingJobScheduler which pending jobs to take next
+ * (weighted fair share across priority classes and assignments) and claims each one with a
+ * conditional UPDATE (see GradingJobRepository.claimJob), so several
+ * backend nodes can share the same database without double-processing.
+ * Jobs left in PROCESSING by a crashed node are re-queued after
+ * {@code grading.worker.stale-after-minutes}; a worker only writes its outcome while it
+ * still owns the job (see GradingJobRepository.findOwnedForUpdate), so a slow worker
+ * cannot overwrite the result of the one that took over.
+ */
+@Component
+@Slf4j
+public class GradingJobWorker {
+
+    private final GradingService gradingService;
+    private final GradingJobScheduler scheduler;
+    private final ExecutorService workers;
+    private final Semaphore freeSlots;
+    private final String workerId;
+    private final long staleAfterMinutes;
+
+    public GradingJobWorker(GradingService gradingService,
+                            GradingJobScheduler scheduler,
+                            @Value("${grading.worker.threads:2}") int threads,
+                            @Value("${grading.worker.stale-after-minutes:30}") long staleAfterMinutes) {
+        this.gradingService = gradingService;
+        this.scheduler = scheduler;
+        int size = Math.max(1, threads);
+        AtomicInteger counter = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(size, runnable -> {
+            Thread thread = new Thread(runnable, "grading-worker-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.freeSlots = new Semaphore(size);
+        this.workerId = ManagementFactory.getRuntimeMXBean().getName() + "/" + UUID.randomUUID().toString().substring(0, 8);
+        this.staleAfterMinutes = staleAfterMinutes;
+    }
+
+    @Scheduled(fixedDelayString = "${grading.worker.poll-interval-ms:1000}")
+    public void pollQueue() {
+        int capacity = freeSlots.availablePermits();
+        if (capacity == 0) {
+            return;
+        }
+
+        List<GradingJob> candidates = scheduler.pick(capacity);
+        for (GradingJob candidate : candidates) {
+            if (!freeSlots.tryAcquire()) {
+                return;
+            }
+            if (!gradingService.claimJob(candidate.getId(), workerId)) {
+                freeSlots.release();
+                continue;
+            }
+            scheduler.onClaimed(candidate);
+            Long jobId = candidate.getId();
+            workers.execute(() -> {
+                try {
+                    process(jobId);
+                } finally {
+                    freeSlots.release();
+                }
+            });
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${grading.worker.stale-check-interval-ms:60000}")
+    public void requeueStaleJobs() {
+        int requeued = gradingService.requeueStaleJobs(LocalDateTime.now().minusMinutes(staleAfterMinutes));
+        if (requeued > 0) {
+            log.warn("Re-queued {} grading jobs abandoned in PROCESSING", requeued);
+        }
+    }
+
+    private void process(Long jobId) {
+        log.info("Worker {} processing grading job {}", workerId, jobId);
+        try {
+            GradingPipelineResultDto response = gradingService.runPipeline(jobId);
+            gradingService.completeJob(jobId, workerId, response);
+        } catch (InterruptedException e) {
+            // Shutting down: leave the job in PROCESSING so the stale-job sweep re-queues it
+            Thread.currentThread().interrupt();
+            log.warn("Worker interrupted while processing grading job {}", jobId);
+        } catch (Exception e) {
+            gradingService.failJob(jobId, workerId, e);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        workers.shutdownNow();
+    }
+}
@@ -0,0 +1,121 @@
+package com.autograder.backend.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import io.micrometer.observation.contextpropagation.ObservationThreadLocalAccessor;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+/**
+ * Metrics and trace spans for the grading pipeline.
+ *
+ * Each pipeline stage (instructor_crop, student_crop, zone_grade, analytics) runs inside an
+ * observation named {@code grading.stage}: it is recorded as a timer tagged with the stage
+ * and, with tracing on the classpath, as a span. The observation is put into the Reactor
+ * context, so the instrumented WebClient opens its HTTP client span as a child of the stage.
+ *
+ * Also records payload sizes ({@code grading.payload.bytes}), zones per paper
+ * ({@code grading.zones.per.paper}) and zones that produced no grade ({@code grading.zones.failed}).
+ */
+@Component
+public class GradingMetrics {
+
+    public static final String INSTRUCTOR_CROP = "instructor_crop";
+    public static final String STUDENT_CROP = "student_crop";
+    public static final String ZONE_GRADE = "zone_grade";
+    public static final String ANALYTICS = "analytics";
+
+    private final MeterRegistry meterRegistry;
+    private final ObservationRegistry observationRegistry;
+    private final DistributionSummary zonesPerPaper;
+
+    public GradingMetrics(MeterRegistry meterRegistry, ObservationRegistry observationRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.observationRegistry = observationRegistry;
+        this.zonesPerPaper = DistributionSummary.builder("grading.zones.per.paper")
+                .description("Answer zones cropped from one student paper")
+                .register(meterRegistry);
+    }
+
+    /** Metrics that go nowhere, for code run outside the Spring context (benchmarks). */
+    public static GradingMetrics noop() {
+        return new GradingMetrics(new SimpleMeterRegistry(), ObservationRegistry.NOOP);
+    }
+
+    /**
+     * Time a reactive stage from subscription to termination.
+     */
+    public <T> Mono<T> observe(String stage, Mono<T> call) {
+        return Mono.defer(() -> {
+            Observation observation = stageObservation(stage).start();
+            return call
+                    .doOnError(observation::error)
+                    .doFinally(signal -> observation.stop())
+                    .contextWrite(context -> context.put(ObservationThreadLocalAccessor.KEY, observation));
+        });
+    }
+
+    /**
+     * Time a blocking stage; the observation is in scope on the calling thread.
+     */
+    public <T, E extends Throwable> T observeBlocking(String stage, Observation.CheckedCallable<T, E> call) throws E {
+        return stageObservation(stage).observeChecked(call);
+    }
+
+    private Observation stageObservation(String stage) {
+        return Observation.createNotStarted("grading.stage", observationRegistry)
+                .contextualName("grading " + stage)
+                .lowCardinalityKeyValue("stage", stage);
+    }
+
+    /**
+     * Record the size of a payload exchanged with an ML service.
+     *
+     * @param kind e.g. "student_crops", "zone_request"
+     */
+    public void recordPayload(String kind, long bytes) {
+        DistributionSummary.builder("grading.payload.bytes")
+                .baseUnit("bytes")
+                .tag("kind", kind)
+                .register(meterRegistry)
+                .record(bytes);
+    }
+
+    /** Record the crop count and total crop bytes of one OCR response. */
+    public void recordCrops(Map<String, byte[]> crops, boolean student) {
+        long bytes = 0;
+        for (byte[] crop : crops.values()) {
+            bytes += crop != null ? crop.length : 0;
+        }
+        recordPayload(student ? "student_crops" : "instructor_crops", bytes);
+        if (student) {
+            zonesPerPaper.record(crops.size());
+        }
+    }
+
+    /**
+     * Count zones that were graded without result.
+     *
+     * @param reason "error", "timeout", "empty" or "unavailable"
+     */
+    public void zonesFailed(String reason, int count) {
+        if (count <= 0) {
+            return;
+        }
+        Counter.builder("grading.zones.failed")
+                .description("Zones dropped from a paper because grading failed")
+                .tag("reason", reason)
+                .register(meterRegistry)
+                .increment(count);
+    }
+
+    public void zoneFailed(String reason) {
+        zonesFailed(reason, 1);
+    }
+}
@@ -0,0 +1,340 @@
+package com.autograder.backend.service;
+
+import com.autograder.backend.dto.AnalyticsSummaryDto;
+import com.autograder.backend.dto.GradingPipelineResultDto;
+import com.autograder.backend.dto.ZoneCropResponseDto;
+import com.autograder.backend.dto.ZoneGradeDto;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * GradingPipelineService
+ *
+ * The Vision-First pipeline shared by the synchronous /run endpoint and the async job worker:
+ * 1. Crop instructor zones (visual ground truth, cached per template/key pair)
+ * 2. Crop student zones (with alignment confidence)
+ * 3. Grade zones in parallel (bounded in-flight + token-bucket rate limit)
+ * 4. Generate class analytics summary
+ *
+ * {@link #runReactive} composes the same steps without blocking threads;
+ * {@link #streamReactive} reports each step as it finishes;
+ * {@link #runBatchReactive} runs them for a whole class with one instructor crop and one analytics call.
+ *
+ * Input problems (nothing to grade) are reported as IllegalArgumentException,
+ * engine failures as IllegalStateException.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class GradingPipelineService {
+
+    public static final String DEFAULT_RUBRIC =
+            "Grade the student answer mathematically by comparing it VISUALLY to the instructor's key. Be objective.";
+
+    private final MLServiceClient mlServiceClient;
+    private final ZoneGradingExecutor zoneGradingExecutor;
+    private final InstructorCropCache instructorCropCache;
+    private final GradingMetrics metrics;
+
+    @Value("${grading.batch.student-concurrency:4}")
+    private int batchConcurrency;
+
+    /**
+     * Run the full pipeline and return the response body served by /api/grading/run.
+     */
+    public GradingPipelineResultDto run(Resource templateFile,
+                                        Resource instructorFile,
+                                        Resource studentFile,
+                                        String studentId,
+                                        String formRubric) throws InterruptedException {
+        log.info("=== Grading pipeline started ===");
+
+        // ── Step 1: Crop instructor zones ───────────────────────────────
+        log.info("Step 1: Cropping instructor zones...");
+        Map<String, byte[]> instructorCrops = instructorCropCache.getOrLoadBlocking(templateFile, instructorFile,
+                () -> loadInstructorCrops(templateFile, instructorFile));
+
+        // ── Step 2: Crop student zones ──────────────────────────────────
+        log.info("Step 2: Cropping student zones...");
+        ZoneCropResponseDto studentResponse = cropStudent(templateFile, studentFile).block();
+        Map<String, byte[]> studentCrops = requireCrops(studentResponse, "Could not align student paper to template.");
+        double alignmentConfidence = studentResponse.getAlignmentConfidence();
+        log.info("Zones found: {} | Alignment: {}", studentCrops.keySet(), alignmentConfidence);
+
+        // ── Step 3: Parallel grading (bounded + rate limited) ──────────
+        log.info("Step 3: Grading {} zones in parallel...", studentCrops.size());
+        List<ZoneGradeDto> gradingResults = zoneGradingExecutor.gradeZones(
+                studentId, studentCrops, instructorCrops, resolveRubric(formRubric));
+
+        if (gradingResults.isEmpty()) {
+            throw new IllegalStateException("Grading engine failed to return results.");
+        }
+
+        // ── Step 4: Analytics and Final Response ────────────────────────
+        log.info("Step 4: Generating analytics...");
+        AnalyticsSummaryDto analytics = analytics(gradingResults).block();
+        GradingPipelineResultDto response = new GradingPipelineResultDto(
+                alignmentConfidence, gradingResults.size(), gradingResults, analytics);
+
+        log.info("=== Grading pipeline complete ===");
+        return response;
+    }
+
+    /**
+     * Non-blocking variant of {@link #run}. The instructor and student crops are requested
+     * concurrently, zones are graded as soon as both crop sets arrive, and no thread is
+     * parked while the ML services work.
+     */
+    public Mono<GradingPipelineResultDto> runReactive(Resource templateFile,
+                                                      Resource instructorFile,
+                                                      Resource studentFile,
+                                                      String studentId,
+                                                      String formRubric) {
+        String rubric = resolveRubric(formRubric);
+
+        Mono<Map<String, byte[]>> instructorCrops = instructorCropCache.getOrLoad(templateFile, instructorFile,
+                () -> loadInstructorCrops(templateFile, instructorFile));
+        Mono<ZoneCropResponseDto> studentResponse = cropStudent(templateFile, studentFile);
+
+        return Mono.zip(instructorCrops, studentResponse)
+                .flatMap(crops -> {
+                    Map<String, byte[]> studentCrops = requireCrops(crops.getT2(), "Could not align student paper to template.");
+                    double alignmentConfidence = crops.getT2().getAlignmentConfidence();
+                    log.info("Zones found: {} | Alignment: {}", studentCrops.keySet(), alignmentConfidence);
+
+                    return zoneGradingExecutor.gradeZonesReactive(studentId, studentCrops, crops.getT1(), rubric)
+                            .collectList()
+                            .flatMap(gradingResults -> {
+                                if (gradingResults.isEmpty()) {
+                                    return Mono.error(new IllegalStateException("Grading engine failed to return results."));
+                                }
+                                return analytics(gradingResults)
+                                        .map(analytics -> new GradingPipelineResultDto(
+                                                alignmentConfidence, gradingResults.size(), gradingResults, analytics));
+                            });
+                })
+                .doOnSubscribe(s -> log.info("=== Grading pipeline started (reactive) ==="))
+                .doOnSuccess(r -> log.info("=== Grading pipeline complete ==="));
+    }
+
+    /**
+     * Progress-streaming variant of {@link #runReactive}. Emits, as they happen:
+     * "instructor_crops" and "student_crops" (with alignment confidence), one "zone" event per
+     * graded zone in completion order, "analytics", then "complete".
+     */
+    public Flux<Map<String, Object>> streamReactive(Resource templateFile,
+                                                    Resource instructorFile,
+                                                    Resource studentFile,
+                                                    String studentId,
+                                                    String formRubric) {
+        String rubric = resolveRubric(formRubric);
+
+        return Flux.defer(() -> {
+            List<ZoneGradeDto> gradingResults = Collections.synchronizedList(new ArrayList<>());
+
+            Mono<Map<String, byte[]>> instructorCrops = instructorCropCache
+                    .getOrLoad(templateFile, instructorFile, () -> loadInstructorCrops(templateFile, instructorFile))
+                    .cache();
+            Mono<ZoneCropResponseDto> studentResponse = cropStudent(templateFile, studentFile)
+                    .cache();
+
+            Flux<Map<String, Object>> crops = Flux.merge(
+                    instructorCrops.map(c -> {
+                        Map<String, Object> event = event("instructor_crops");
+                        event.put("zones", c.keySet());
+                        return event;
+                    }),
+                    studentResponse.map(response -> {
+                        Map<String, Object> event = event("student_crops");
+                        event.put("zones", requireCrops(response, "Could not align student paper to template.").keySet());
+                        event.put("alignment_confidence", response.getAlignmentConfidence());
+                        return event;
+                    }));
+
+            Flux<Map<String, Object>> zones = Mono.zip(instructorCrops, studentResponse)
+                    .flatMapMany(t -> zoneGradingExecutor.streamZonesReactive(
+                            studentId, requireCrops(t.getT2(), "Could not align student paper to template."), t.getT1(), rubric))
+                    .map(zone -> {
+                        gradingResults.add(zone);
+                        return zoneEvent(zone);
+                    });
+
+            Flux<Map<String, Object>> summary = Mono.defer(() -> {
+                if (gradingResults.isEmpty()) {
+                    return Mono.error(new IllegalStateException("Grading engine failed to return results."));
+                }
+                return analytics(new ArrayList<>(gradingResults));
+            }).flatMapMany(analytics -> {
+                Map<String, Object> analyticsEvent = event("analytics");
+                analyticsEvent.put("analytics", analytics);
+                Map<String, Object> complete = event("complete");
+                complete.put("zones_graded", gradingResults.size());
+                return Flux.just(analyticsEvent, complete);
+            });
+
+            return Flux.concat(crops, zones, summary);
+        });
+    }
+
+    private static Map<String, Object> event(String type) {
+        Map<String, Object> event = new LinkedHashMap<>();
+        event.put("type", type);
+        return event;
+    }
+
+    private static Map<String, Object> zoneEvent(ZoneGradeDto zone) {
+        Map<String, Object> event = event("zone");
+        event.put("student_id", zone.studentId());
+        event.put("zone_id", zone.zoneId());
+        event.put("score", zone.score());
+        event.put("max_score", zone.maxScore());
+        event.put("confidence", zone.confidence());
+        event.put("reasoning", zone.reasoning());
+        event.put("concept", zone.concept());
+        return event;
+    }
+
+    /**
+     * Grade a whole class against one template and instructor key.
+     * The instructor key is cropped once; students are cropped and graded
+     * {@code grading.batch.student-concurrency} at a time. Emits one "student" event per
+     * paper as soon as it is graded (in completion order), then a single "analytics"
+     * event computed over the whole cohort.
+     */
+    public Flux<Map<String, Object>> runBatchReactive(Resource templateFile,
+                                                      Resource instructorFile,
+                                                      List<Resource> studentFiles,
+                                                      String formRubric) {
+        String rubric = resolveRubric(formRubric);
+
+        return Flux.defer(() -> {
+            List<ZoneGradeDto> cohort = Collections.synchronizedList(new ArrayList<>());
+            AtomicInteger graded = new AtomicInteger();
+
+            Flux<Map<String, Object>> students = instructorCropCache
+                    .getOrLoad(templateFile, instructorFile, () -> loadInstructorCrops(templateFile, instructorFile))
+                    .flatMapMany(instructorCrops -> Flux.fromIterable(studentFiles)
+                            .flatMap(studentFile -> gradeStudent(templateFile, studentFile, instructorCrops, rubric)
+                                    .doOnNext(event -> {
+                                        if (!event.containsKey("error")) {
+                                            graded.incrementAndGet();
+                                            cohort.addAll(zoneScores(event));
+                                        }
+                                    }), batchConcurrency));
+
+            Mono<Map<String, Object>> analytics = Mono.defer(() -> {
+                if (cohort.isEmpty()) {
+                    return Mono.empty();
+                }
+                return analytics(new ArrayList<>(cohort))
+                        .map(summary -> {
+                            Map<String, Object> event = new LinkedHashMap<>();
+                            event.put("type", "analytics");
+                            event.put("students_graded", graded.get());
+                            event.put("students_failed", studentFiles.size() - graded.get());
+                            event.put("zones_graded", cohort.size());
+                            event.put("analytics", summary);
+                            return event;
+                        });
+            });
+
+            return students.concatWith(analytics);
+        })
+                .doOnSubscribe(s -> log.info("=== Batch grading started ({} papers) ===", studentFiles.size()))
+                .doOnComplete(() -> log.info("=== Batch grading complete ==="));
+    }
+
+    private Mono<Map<String, Object>> gradeStudent(Resource templateFile,
+                                                   Resource studentFile,
+                                                   Map<String, byte[]> instructorCrops,
+                                                   String rubric) {
+        String studentId = studentIdOf(studentFile);
+        return cropStudent(templateFile, studentFile)
+                .flatMap(response -> {
+                    Map<String, byte[]> studentCrops = requireCrops(response, "Could not align student paper to template.");
+                    double alignmentConfidence = response.getAlignmentConfidence();
+                    return zoneGradingExecutor.gradeZonesReactive(studentId, studentCrops, instructorCrops, rubric)
+                            .collectList()
+                            .map(gradingResults -> {
+                                Map<String, Object> event = new LinkedHashMap<>();
+                                event.put("type", "student");
+                                event.put("student_id", studentId);
+                                event.put("file", studentFile.getFilename());
+                                event.put("alignment_confidence", alignmentConfidence);
+                                event.put("zones_graded", gradingResults.size());
+                                event.put("per_zone_scores", gradingResults);
+                                return event;
+                            });
+                })
+                .onErrorResume(e -> {
+                    log.error("Failed to grade {}: {}", studentFile.getFilename(), e.getMessage());
+                    Map<String, Object> event = new LinkedHashMap<>();
+                    event.put("type", "student");
+                    event.put("student_id", studentId);
+                    event.put("file", studentFile.getFilename());
+                    event.put("error", e.getMessage());
+                    return Mono.just(event);
+                });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<ZoneGradeDto> zoneScores(Map<String, Object> studentEvent) {
+        Object scores = studentEvent.get("per_zone_scores");
+        return scores != null ? (List<ZoneGradeDto>) scores : List.of();
+    }
+
+    /**
+     * Papers are identified by file name without extension (e.g. "s1024.png" → "s1024").
+     */
+    private static String studentIdOf(Resource studentFile) {
+        String name = studentFile.getFilename();
+        if (name == null || name.isBlank()) {
+            return "STUDENT_UNKNOWN";
+        }
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+
+    private Mono<Map<String, byte[]>> loadInstructorCrops(Resource templateFile, Resource instructorFile) {
+        return metrics.observe(GradingMetrics.INSTRUCTOR_CROP, mlServiceClient.cropZonesReactive(templateFile, instructorFile))
+                .map(response -> requireCrops(response, "No answer zones found in instructor key."))
+                .doOnNext(crops -> metrics.recordCrops(crops, false));
+    }
+
+    private Mono<ZoneCropResponseDto> cropStudent(Resource templateFile, Resource studentFile) {
+        return metrics.observe(GradingMetrics.STUDENT_CROP, mlServiceClient.cropZonesReactive(templateFile, studentFile))
+                .doOnNext(response -> {
+                    if (response.getCrops() != null) {
+                        metrics.recordCrops(response.getCrops(), true);
+                    }
+                });
+    }
+
+    private Mono<AnalyticsSummaryDto> analytics(List<ZoneGradeDto> gradingResults) {
+        return metrics.observe(GradingMetrics.ANALYTICS, mlServiceClient.getAnalyticsReactive(gradingResults));
+    }
+
+    private static Map<String, byte[]> requireCrops(ZoneCropResponseDto response, String error) {
+        Map<String, byte[]> crops = response.getCrops();
+        if (crops == null || crops.isEmpty()) {
+            throw new IllegalArgumentException(error);
+        }
+        return crops;
+    }
+
+    public static String resolveRubric(String formRubric) {
+        return (formRubric != null && !formRubric.trim().isEmpty()) ? formRubric : DEFAULT_RUBRIC;
+    }
+}
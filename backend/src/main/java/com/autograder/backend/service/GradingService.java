@@ -2,46 +2,337 @@ package com.autograder.backend.service;
 
 import com.autograder.backend.entity.*;
 import com.autograder.backend.repository.*;
+import com.autograder.backend.dto.GradingPipelineResultDto;
 import com.autograder.backend.dto.GradingResultRequestDto;
+import com.autograder.backend.dto.ZoneGradeDto;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.multipart.MultipartFile;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class GradingService {
 
-    private final MLServiceClient mlServiceClient;
+    private final GradingPipelineService gradingPipelineService;
     private final SubmissionRepository submissionRepository;
+    private final AssignmentRepository assignmentRepository;
     private final GradingJobRepository gradingJobRepository;
     private final GradingResultRepository gradingResultRepository;
+    private final ZoneGradingResultRepository zoneGradingResultRepository;
+    private final AssignmentStatsService assignmentStatsService;
+    private final SubmissionBlobStore blobStore;
+    private final ObjectMapper objectMapper;
 
+    @Value("${file.upload-dir}")
+    private String uploadDir;
+
+    /**
+     * Queue a PENDING grading job for a stored submission, or return the job it already has
+     * (a submission has at most one). The job worker picks it up; the caller returns immediately.
+     * The job grades the stored files in place (submission blob, assignment template and key),
+     * so nothing is re-uploaded.
+     *
+     * @throws IllegalStateException if the assignment has no template/instructor key yet
+     */
+    @Transactional
+    public GradingJob startGrading(Long submissionId) {
+        Submission submission = submissionRepository.findById(submissionId)
+                .orElseThrow(() -> new RuntimeException("Submission not found"));
+        Long assignmentId = submission.getAssignment().getId();
+        return queueIfReady(assignmentId, submissionId)
+                .orElseThrow(() -> new IllegalStateException("Assignment " + assignmentId + " has no template/instructor key yet."));
+    }
+
+    /**
+     * Queue a newly stored submission if its assignment already has a template and key;
+     * otherwise it waits for attachGradingMaterials. Both run under the assignment's row
+     * lock, so a submission stored while the materials are being attached is queued by
+     * exactly one of them instead of neither.
+     *
+     * @return the submission's job, or empty while the assignment has no materials
+     */
     @Transactional
-    public void startGrading(Long submissionId) {
+    public Optional<GradingJob> queueIfReady(Long assignmentId, Long submissionId) {
+        Assignment assignment = assignmentRepository.findForUpdate(assignmentId)
+                .orElseThrow(() -> new RuntimeException("Assignment not found"));
+        if (!assignment.hasGradingMaterials()) {
+            return Optional.empty();
+        }
+        Optional<GradingJob> queued = gradingJobRepository.findBySubmissionId(submissionId);
+        if (queued.isPresent()) { // attachGradingMaterials got to it first
+            return queued;
+        }
         Submission submission = submissionRepository.findById(submissionId)
                 .orElseThrow(() -> new RuntimeException("Submission not found"));
+        return Optional.of(queue(submission, GradingJob.PriorityClass.STANDARD));
+    }
+
+    /**
+     * Store an assignment's template and instructor key, then queue every submission
+     * that arrived before they were available. Holds the assignment's row lock (see queueIfReady).
+     *
+     * @return number of submissions queued
+     */
+    @Transactional
+    public int attachGradingMaterials(Long assignmentId,
+                                      MultipartFile templateFile,
+                                      MultipartFile instructorFile) throws IOException {
+        Assignment assignment = assignmentRepository.findForUpdate(assignmentId)
+                .orElseThrow(() -> new RuntimeException("Assignment not found"));
+        assignment.setTemplatePath(blobStore.store(templateFile.getInputStream()).path().toString());
+        assignment.setReferenceSolutionPath(blobStore.store(instructorFile.getInputStream()).path().toString());
+
+        List<Submission> waiting = submissionRepository.findUnqueuedByAssignmentId(assignmentId);
+        for (Submission submission : waiting) {
+            queue(submission, GradingJob.PriorityClass.BULK);
+        }
+        log.info("Stored grading materials for assignment {}; queued {} waiting submissions", assignmentId, waiting.size());
+        return waiting.size();
+    }
+
+    private GradingJob queue(Submission submission, GradingJob.PriorityClass priorityClass) {
+        Assignment assignment = submission.getAssignment();
+        if (!assignment.hasGradingMaterials()) {
+            throw new IllegalStateException("Assignment " + assignment.getId() + " has no template/instructor key yet.");
+        }
 
-        // Create Grading Job
         GradingJob job = new GradingJob();
         job.setSubmission(submission);
-        job.setStatus(GradingJob.JobStatus.PROCESSING);
-        job.setStatus(GradingJob.JobStatus.FAILED);
-        job.setStartedAt(LocalDateTime.now());
-        job.setErrorMessage("Use /api/grading/run with multipart files for the vision pipeline.");
-        job.setCompletedAt(LocalDateTime.now());
-        gradingJobRepository.save(job);
+        job.setStatus(GradingJob.JobStatus.PENDING);
+        job.setTemplatePath(assignment.getTemplatePath());
+        job.setInstructorPath(assignment.getReferenceSolutionPath());
+        job.setStudentPath(submission.getFilePath());
+        job.setRubricText(assignment.getRubricText());
+        job.setPriorityClass(priorityClass);
+        job.setFairShareKey(GradingJob.assignmentFlow(assignment.getId()));
+        GradingJob saved = gradingJobRepository.save(job);
 
-        // NOTE: Legacy DB-backed grading flow.
-        // The Vision pipeline is now handled by GradingOrchestrationController.
-        // This method is kept to satisfy existing API contracts but does nothing in the demo.
-        log.info("startGrading({}) called — using GradingOrchestrationController for vision pipeline instead.", submissionId);
+        log.info("Queued {} grading job {} for submission {}", priorityClass, saved.getId(), submission.getId());
+        return saved;
     }
 
-    private void saveGradingResult(GradingJob job, GradingResultRequestDto dto, String studentText) {
+    /**
+     * Store the three pipeline uploads on disk and queue a PENDING job for them.
+     */
+    @Transactional
+    public GradingJob queuePipelineJob(MultipartFile templateFile,
+                                       MultipartFile instructorFile,
+                                       MultipartFile studentFile,
+                                       String rubric) throws IOException {
+        Path jobDir = Paths.get(uploadDir, "jobs", UUID.randomUUID().toString());
+        Files.createDirectories(jobDir);
+
+        GradingJob job = new GradingJob();
+        job.setStatus(GradingJob.JobStatus.PENDING);
+        job.setTemplatePath(storeUpload(jobDir, "template", templateFile));
+        job.setInstructorPath(storeUpload(jobDir, "instructor", instructorFile));
+        job.setStudentPath(storeUpload(jobDir, "student", studentFile));
+        job.setRubricText(rubric);
+        job.setPriorityClass(GradingJob.PriorityClass.INTERACTIVE);
+        job.setFairShareKey(GradingJob.ADHOC_FLOW);
+        GradingJob saved = gradingJobRepository.save(job);
+
+        log.info("Queued pipeline job {} ({})", saved.getId(), jobDir);
+        return saved;
+    }
+
+    /**
+     * Try to take ownership of a pending job; its submission (if any) moves to PROCESSING
+     * in the same transaction.
+     *
+     * @return true if this worker claimed it, false if another worker already did
+     */
+    @Transactional
+    public boolean claimJob(Long jobId, String workerId) {
+        boolean claimed = gradingJobRepository.claimJob(jobId, workerId, LocalDateTime.now(),
+                GradingJob.JobStatus.PENDING, GradingJob.JobStatus.PROCESSING) == 1;
+        if (claimed) {
+            submissionRepository.markProcessing(jobId, Submission.SubmissionStatus.PROCESSING);
+        }
+        return claimed;
+    }
+
+    /**
+     * Re-queue jobs abandoned in PROCESSING and return their submissions to PENDING.
+     */
+    @Transactional
+    public int requeueStaleJobs(LocalDateTime cutoff) {
+        submissionRepository.resetStaleProcessing(cutoff, Submission.SubmissionStatus.PENDING,
+                Submission.SubmissionStatus.PROCESSING, GradingJob.JobStatus.PROCESSING);
+        return gradingJobRepository.requeueStaleJobs(cutoff,
+                GradingJob.JobStatus.PENDING, GradingJob.JobStatus.PROCESSING);
+    }
+
+    /**
+     * Run the vision pipeline for a claimed job. Deliberately not transactional:
+     * no connection is held while the ML services work. The stored files are
+     * streamed from disk into the OCR request in chunks, never read whole.
+     */
+    public GradingPipelineResultDto runPipeline(Long jobId) throws InterruptedException {
+        GradingJob job = gradingJobRepository.findById(jobId)
+                .orElseThrow(() -> new RuntimeException("Grading job not found"));
+        if (job.getTemplatePath() == null || job.getInstructorPath() == null || job.getStudentPath() == null) {
+            throw new IllegalArgumentException("Job has no template/instructor key to grade against.");
+        }
+        return gradingPipelineService.run(
+                new FileSystemResource(job.getTemplatePath()),
+                new FileSystemResource(job.getInstructorPath()),
+                new FileSystemResource(job.getStudentPath()),
+                job.getSubmission() != null ? "STUDENT_" + job.getSubmission().getId() : "STUDENT_001",
+                job.getRubricText());
+    }
+
+    /**
+     * Store a claimed job's result, provided {@code workerId} still owns the job.
+     *
+     * @return false if the job was re-queued or taken over meanwhile; nothing is written then
+     */
+    @Transactional
+    public boolean completeJob(Long jobId, String workerId, GradingPipelineResultDto response) throws JsonProcessingException {
+        Optional<GradingJob> owned = gradingJobRepository.findOwnedForUpdate(jobId, workerId, GradingJob.JobStatus.PROCESSING);
+        if (owned.isEmpty()) {
+            log.warn("Grading job {} is no longer owned by {}; discarding its result", jobId, workerId);
+            return false;
+        }
+        GradingJob job = owned.get();
+        job.setResultJson(objectMapper.writeValueAsString(response));
+
+        List<ZoneGradeDto> zones = response.perZoneScores() != null ? response.perZoneScores() : List.of();
+        saveGradingResult(job, toResultDto(job, zones), null);
+        zoneGradingResultRepository.saveAll(toZoneResults(job, zones));
+        log.info("Grading job {} completed", jobId);
+        return true;
+    }
+
+    /**
+     * Persist a finished /run-batch cohort in one transaction: a COMPLETED job, an aggregate
+     * result and the per-zone rows for every student. With sequence ids and Hibernate JDBC
+     * batching the inserts go out in batches of {@code hibernate.jdbc.batch_size}.
+     * <p>
+     * Batch papers carry no student or assignment, so the rows are standalone records under
+     * {@link GradingJob#BATCH_FLOW}: they never join the job queue, and assignment statistics,
+     * which are keyed by submission, do not count them.
+     *
+     * @param studentEvents "student" events emitted by GradingPipelineService.runBatchReactive
+     * @return number of jobs recorded
+     */
+    @Transactional
+    public int recordBatch(List<Map<String, Object>> studentEvents) throws JsonProcessingException {
+        List<GradingJob> jobs = new ArrayList<>(studentEvents.size());
+        List<GradingResult> results = new ArrayList<>(studentEvents.size());
+        List<ZoneGradingResult> zoneRows = new ArrayList<>();
+        LocalDateTime now = LocalDateTime.now();
+
+        for (Map<String, Object> event : studentEvents) {
+            List<ZoneGradeDto> zones = zoneScores(event);
+            GradingJob job = new GradingJob();
+            job.setStatus(GradingJob.JobStatus.COMPLETED);
+            job.setPriorityClass(GradingJob.PriorityClass.BULK);
+            job.setFairShareKey(GradingJob.BATCH_FLOW);
+            job.setStartedAt(now);
+            job.setCompletedAt(now);
+            job.setResultJson(objectMapper.writeValueAsString(event));
+            jobs.add(job);
+
+            results.add(toResult(job, toResultDto(job, zones), null));
+            zoneRows.addAll(toZoneResults(job, zones));
+        }
+
+        gradingJobRepository.saveAll(jobs);
+        gradingResultRepository.saveAll(results);
+        zoneGradingResultRepository.saveAll(zoneRows);
+        log.info("Recorded batch: {} jobs, {} zone results", jobs.size(), zoneRows.size());
+        return jobs.size();
+    }
+
+    /**
+     * Record a claimed job's failure, provided {@code workerId} still owns the job.
+     */
+    @Transactional
+    public void failJob(Long jobId, String workerId, Throwable error) {
+        gradingJobRepository.findOwnedForUpdate(jobId, workerId, GradingJob.JobStatus.PROCESSING).ifPresentOrElse(
+                job -> handleGradingError(job, error),
+                () -> log.warn("Grading job {} is no longer owned by {}; not recording its failure", jobId, workerId));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<ZoneGradeDto> zoneScores(Map<String, Object> studentEvent) {
+        Object zones = studentEvent.get("per_zone_scores");
+        return zones != null ? (List<ZoneGradeDto>) zones : List.of();
+    }
+
+    private static List<ZoneGradingResult> toZoneResults(GradingJob job, List<ZoneGradeDto> zones) {
+        List<ZoneGradingResult> rows = new ArrayList<>(zones.size());
+        for (ZoneGradeDto zone : zones) {
+            ZoneGradingResult row = new ZoneGradingResult();
+            row.setJob(job);
+            row.setStudentId(zone.studentId());
+            row.setZoneId(zone.zoneId());
+            row.setScore(asDouble(zone.score()));
+            row.setMaxScore(asDouble(zone.maxScore()));
+            row.setConfidence(asDouble(zone.confidence()));
+            row.setReasoning(zone.reasoning());
+            row.setConcept(zone.concept());
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private GradingResultRequestDto toResultDto(GradingJob job, List<ZoneGradeDto> zones) throws JsonProcessingException {
+        double score = 0.0;
+        double maxScore = 0.0;
+        double confidence = 0.0;
+        boolean requiresReview = false;
+        for (ZoneGradeDto zone : zones) {
+            score += asDouble(zone.score());
+            maxScore += asDouble(zone.maxScore());
+            confidence += asDouble(zone.confidence());
+            requiresReview |= Boolean.TRUE.equals(zone.requiresReview());
+        }
+
+        GradingResultRequestDto dto = new GradingResultRequestDto();
+        dto.setJobId(job.getId());
+        dto.setScore(score);
+        dto.setMaxScore(maxScore);
+        dto.setConfidenceScore(zones.isEmpty() ? 0.0 : confidence / zones.size());
+        dto.setFeedbackJson(objectMapper.writeValueAsString(zones));
+        dto.setRequiresReview(requiresReview);
+        return dto;
+    }
+
+    private static double asDouble(Double value) {
+        return value != null ? value : 0.0;
+    }
+
+    private static String storeUpload(Path dir, String role, MultipartFile file) throws IOException {
+        String originalFilename = file.getOriginalFilename();
+        if (originalFilename == null || originalFilename.isEmpty()) {
+            originalFilename = role + ".png";
+        }
+        Path target = dir.resolve(role + "_" + Paths.get(originalFilename).getFileName());
+        Files.copy(file.getInputStream(), target);
+        return target.toAbsolutePath().toString();
+    }
+
+    private static GradingResult toResult(GradingJob job, GradingResultRequestDto dto, String studentText) {
         GradingResult result = new GradingResult();
         result.setJob(job);
         result.setScore(dto.getScore());
@@ -50,26 +341,42 @@ public class GradingService {
         result.setConfidenceScore(dto.getConfidenceScore());
         result.setOcrText(studentText);
         result.setRequiresReview(dto.getRequiresReview());
-        gradingResultRepository.save(result);
+        return result;
+    }
+
+    /**
+     * Must run inside a transaction on a managed job: the job and submission
+     * status changes are flushed by dirty checking with the result insert,
+     * and the assignment's statistics are updated in the same commit.
+     */
+    private void saveGradingResult(GradingJob job, GradingResultRequestDto dto, String studentText) {
+        GradingResult result = gradingResultRepository.save(toResult(job, dto, studentText));
 
         job.setStatus(GradingJob.JobStatus.COMPLETED);
         job.setCompletedAt(LocalDateTime.now());
-        gradingJobRepository.save(job);
 
         Submission submission = job.getSubmission();
-        submission.setStatus(Submission.SubmissionStatus.GRADED);
-        submissionRepository.save(submission);
+        if (submission != null) {
+            submission.setStatus(Submission.SubmissionStatus.GRADED);
+            assignmentStatsService.recordResult(submission.getAssignment().getId(), result);
+        }
     }
 
     private void handleGradingError(GradingJob job, Throwable error) {
         log.error("Grading failed for job: {}", job.getId(), error);
         job.setStatus(GradingJob.JobStatus.FAILED);
-        job.setErrorMessage(error.getMessage());
+        job.setErrorMessage(truncate(error.getMessage()));
         job.setCompletedAt(LocalDateTime.now());
         gradingJobRepository.save(job);
 
         Submission submission = job.getSubmission();
-        submission.setStatus(Submission.SubmissionStatus.FAILED);
-        submissionRepository.save(submission);
+        if (submission != null) {
+            submission.setStatus(Submission.SubmissionStatus.FAILED);
+            submissionRepository.save(submission);
+        }
+    }
+
+    private static String truncate(String message) {
+        return message != null && message.length() > 1000 ? message.substring(0, 1000) : message;
     }
 }
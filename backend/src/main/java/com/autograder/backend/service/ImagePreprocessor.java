@@ -0,0 +1,406 @@
+package com.autograder.backend.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * ImagePreprocessor
+ *
+ * Shrinks page images before they are sent to the OCR service. Phone photos arrive as
+ * 12+ megapixel colour JPEGs while the aligner works at a fraction of that, so with
+ * {@code grading.preprocess.enabled} each page is:
+ * - sniffed for its real format (magic bytes, not the file name)
+ * - decoded with source subsampling straight to about twice the target size, then
+ *   scaled so the long edge is at most {@code grading.preprocess.max-long-edge} pixels
+ * - rotated upright according to its EXIF orientation (the re-encoded page carries no EXIF)
+ * - converted to grayscale ({@code grading.preprocess.grayscale})
+ * - re-encoded as {@code grading.preprocess.format} (jpeg or png)
+ * The original is sent instead when the format cannot be decoded (PDF, HEIC) or the
+ * re-encoded page is not smaller. Pages are processed off the event loop, so the template
+ * and target of one OCR call (and the papers of a batch) are prepared in parallel.
+ * Every paper of an assignment is aligned against the same template, so prepared templates
+ * are kept by content digest (the last {@code grading.preprocess.template-cache-size}) and
+ * each is decoded once rather than once per paper.
+ *
+ * Disabled, pages are passed through untouched but still labelled with their real media type.
+ */
+@Component
+@Slf4j
+public class ImagePreprocessor {
+
+    /** A page ready for the OCR request. */
+    public record PreparedImage(Resource resource, MediaType mediaType) {
+    }
+
+    private static final int SNIFF_BYTES = 16;
+
+    private final GradingMetrics metrics;
+    private final boolean enabled;
+    private final int maxLongEdge;
+    private final boolean grayscale;
+    private final String format;
+    private final float quality;
+    private final int templateCacheSize;
+
+    /** Template digest -> prepared template; a null resource means the original is sent. */
+    private final LinkedHashMap<String, PreparedImage> templates = new LinkedHashMap<>(16, 0.75f, true);
+
+    @Autowired
+    public ImagePreprocessor(GradingMetrics metrics,
+                             @Value("${grading.preprocess.enabled:false}") boolean enabled,
+                             @Value("${grading.preprocess.max-long-edge:2000}") int maxLongEdge,
+                             @Value("${grading.preprocess.grayscale:true}") boolean grayscale,
+                             @Value("${grading.preprocess.format:jpeg}") String format,
+                             @Value("${grading.preprocess.jpeg-quality:0.85}") float quality,
+                             @Value("${grading.preprocess.template-cache-size:32}") int templateCacheSize) {
+        this.metrics = metrics;
+        this.enabled = enabled;
+        this.maxLongEdge = Math.max(256, maxLongEdge);
+        this.grayscale = grayscale;
+        this.format = "png".equalsIgnoreCase(format) ? "png" : "jpeg";
+        this.quality = Math.min(1f, Math.max(0.1f, quality));
+        this.templateCacheSize = Math.max(0, templateCacheSize);
+    }
+
+    /** Pass-through instance (format detection only), for code run outside the Spring context. */
+    public static ImagePreprocessor disabled() {
+        return new ImagePreprocessor(GradingMetrics.noop(), false, 2000, true, "jpeg", 0.85f, 0);
+    }
+
+    /**
+     * Prepare one page on a worker thread.
+     */
+    public Mono<PreparedImage> prepareReactive(Resource page) {
+        return Mono.fromCallable(() -> prepare(page))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Prepare a template page on a worker thread, reusing an earlier preparation of the same bytes.
+     */
+    public Mono<PreparedImage> prepareTemplateReactive(Resource template) {
+        return Mono.fromCallable(() -> prepareTemplate(template))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Like {@link #prepare}, but cached by the template's SHA-256, which costs one read of the file.
+     */
+    public PreparedImage prepareTemplate(Resource template) throws IOException {
+        if (!enabled || templateCacheSize == 0) {
+            return prepare(template);
+        }
+        String digest = sha256Hex(template);
+        PreparedImage cached;
+        synchronized (templates) {
+            cached = templates.get(digest);
+        }
+        if (cached == null) {
+            PreparedImage prepared = prepare(template);
+            // Never keep a reference to the caller's resource: it may be a request's temp file
+            cached = prepared.resource() != template ? prepared : new PreparedImage(null, prepared.mediaType());
+            synchronized (templates) {
+                templates.put(digest, cached);
+                Iterator<String> eldest = templates.keySet().iterator();
+                while (templates.size() > templateCacheSize) {
+                    eldest.next();
+                    eldest.remove();
+                }
+            }
+        }
+        return cached.resource() != null ? cached : new PreparedImage(template, cached.mediaType());
+    }
+
+    /**
+     * Prepare one page: shrink it when enabled and possible, otherwise pass it through.
+     */
+    public PreparedImage prepare(Resource page) throws IOException {
+        String detected = sniff(page);
+        MediaType original = mediaType(detected);
+        if (!enabled || !("jpeg".equals(detected) || "png".equals(detected)
+                || "gif".equals(detected) || "bmp".equals(detected) || "tiff".equals(detected))) {
+            return new PreparedImage(page, original);
+        }
+
+        long originalBytes = page.contentLength();
+        byte[] encoded;
+        try {
+            BufferedImage image = decodeScaled(page);
+            if (image == null) {
+                return new PreparedImage(page, original);
+            }
+            if ("jpeg".equals(detected)) {
+                image = orient(image, exifOrientation(page));
+            }
+            encoded = encode(resize(image));
+        } catch (IOException | RuntimeException e) {
+            log.warn("Image preprocessing failed for {}, sending original: {}", page.getDescription(), e.getMessage());
+            return new PreparedImage(page, original);
+        }
+
+        metrics.recordPayload("ocr_page_original", originalBytes);
+        if (originalBytes >= 0 && encoded.length >= originalBytes) {
+            metrics.recordPayload("ocr_page_sent", originalBytes);
+            return new PreparedImage(page, original);
+        }
+        metrics.recordPayload("ocr_page_sent", encoded.length);
+
+        String filename = renamed(page.getFilename(), "jpeg".equals(format) ? ".jpg" : ".png");
+        Resource prepared = new ByteArrayResource(encoded, "Preprocessed " + page.getDescription()) {
+            @Override public String getFilename() { return filename; }
+        };
+        return new PreparedImage(prepared, mediaType(format));
+    }
+
+    /**
+     * Detect the format from the first bytes: jpeg, png, gif, bmp, tiff, webp, pdf, heic, or null.
+     */
+    static String sniff(Resource page) throws IOException {
+        byte[] head;
+        try (InputStream in = page.getInputStream()) {
+            head = in.readNBytes(SNIFF_BYTES);
+        }
+        if (startsWith(head, 0xFF, 0xD8, 0xFF)) return "jpeg";
+        if (startsWith(head, 0x89, 'P', 'N', 'G')) return "png";
+        if (startsWith(head, 'G', 'I', 'F', '8')) return "gif";
+        if (startsWith(head, 'B', 'M')) return "bmp";
+        if (startsWith(head, 'I', 'I', 0x2A, 0x00) || startsWith(head, 'M', 'M', 0x00, 0x2A)) return "tiff";
+        if (startsWith(head, '%', 'P', 'D', 'F')) return "pdf";
+        if (head.length >= 12 && startsWith(head, 'R', 'I', 'F', 'F')
+                && head[8] == 'W' && head[9] == 'E' && head[10] == 'B' && head[11] == 'P') return "webp";
+        if (head.length >= 12 && head[4] == 'f' && head[5] == 't' && head[6] == 'y' && head[7] == 'p') return "heic";
+        return null;
+    }
+
+    static MediaType mediaType(String format) {
+        if (format == null) {
+            return MediaType.APPLICATION_OCTET_STREAM;
+        }
+        return switch (format) {
+            case "jpeg" -> MediaType.IMAGE_JPEG;
+            case "png" -> MediaType.IMAGE_PNG;
+            case "gif" -> MediaType.IMAGE_GIF;
+            case "pdf" -> MediaType.APPLICATION_PDF;
+            default -> MediaType.parseMediaType("image/" + format);
+        };
+    }
+
+    private static boolean startsWith(byte[] head, int... magic) {
+        if (head.length < magic.length) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; i++) {
+            if ((head[i] & 0xFF) != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decode with the largest source subsampling that keeps the long edge at or above
+     * twice the target, so a 4000px photo is never fully materialized in colour.
+     */
+    private BufferedImage decodeScaled(Resource page) throws IOException {
+        try (InputStream in = page.getInputStream();
+             ImageInputStream stream = ImageIO.createImageInputStream(in)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(stream, true, true);
+                int longEdge = Math.max(reader.getWidth(0), reader.getHeight(0));
+                int step = Math.max(1, longEdge / (2 * maxLongEdge));
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(step, step, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Scale to the target long edge (never up) and convert to grayscale in one draw.
+     */
+    private BufferedImage resize(BufferedImage image) {
+        double scale = Math.min(1.0, (double) maxLongEdge / Math.max(image.getWidth(), image.getHeight()));
+        int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+        int type = grayscale ? BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_INT_RGB;
+        if (scale == 1.0 && image.getType() == type && !image.getColorModel().hasAlpha()) {
+            return image;
+        }
+
+        BufferedImage target = new BufferedImage(width, height, type);
+        Graphics2D g = target.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.setColor(Color.WHITE); // transparent PNG areas become paper, not black
+            g.fillRect(0, 0, width, height);
+            g.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+        return target;
+    }
+
+    private byte[] encode(BufferedImage image) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName(format).next();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(256 * 1024);
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(buffer)) {
+            writer.setOutput(out);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if ("jpeg".equals(format)) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(quality);
+            }
+            writer.write(null, new IIOImage(image, null, null), param);
+            out.flush();
+            return buffer.toByteArray();
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    private static String sha256Hex(Resource page) throws IOException {
+        try (InputStream in = page.getInputStream()) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] chunk = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(chunk)) != -1) {
+                digest.update(chunk, 0, read);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * EXIF orientation (1-8) of a JPEG, 1 when absent. Only the APP1 segment is read.
+     */
+    private static int exifOrientation(Resource page) {
+        try (InputStream in = page.getInputStream()) {
+            byte[] head = in.readNBytes(64 * 1024);
+            int pos = 2;
+            while (pos + 4 <= head.length && (head[pos] & 0xFF) == 0xFF) {
+                int marker = head[pos + 1] & 0xFF;
+                int length = ((head[pos + 2] & 0xFF) << 8) | (head[pos + 3] & 0xFF);
+                if (marker == 0xDA) {
+                    break; // start of scan: no more metadata
+                }
+                if (marker == 0xE1 && pos + 10 <= head.length
+                        && Arrays.equals(head, pos + 4, pos + 10, new byte[]{'E', 'x', 'i', 'f', 0, 0}, 0, 6)) {
+                    return tiffOrientation(head, pos + 10, Math.min(head.length, pos + 2 + length));
+                }
+                pos += 2 + length;
+            }
+        } catch (IOException | RuntimeException e) {
+            log.debug("Could not read EXIF orientation of {}: {}", page.getDescription(), e.getMessage());
+        }
+        return 1;
+    }
+
+    private static int tiffOrientation(byte[] data, int tiff, int end) {
+        boolean little = data[tiff] == 'I';
+        int ifd = tiff + readInt(data, tiff + 4, little);
+        int entries = readShort(data, ifd, little);
+        for (int i = 0; i < entries; i++) {
+            int entry = ifd + 2 + i * 12;
+            if (entry + 12 > end) {
+                break;
+            }
+            if (readShort(data, entry, little) == 0x0112) {
+                int orientation = readShort(data, entry + 8, little);
+                return orientation >= 1 && orientation <= 8 ? orientation : 1;
+            }
+        }
+        return 1;
+    }
+
+    private static int readShort(byte[] data, int at, boolean little) {
+        int a = data[at] & 0xFF;
+        int b = data[at + 1] & 0xFF;
+        return little ? (b << 8) | a : (a << 8) | b;
+    }
+
+    private static int readInt(byte[] data, int at, boolean little) {
+        int hi = readShort(data, little ? at + 2 : at, little);
+        int lo = readShort(data, little ? at : at + 2, little);
+        return (hi << 16) | lo;
+    }
+
+    /**
+     * Apply an EXIF orientation so the page is upright without metadata.
+     */
+    private static BufferedImage orient(BufferedImage image, int orientation) {
+        if (orientation <= 1) {
+            return image;
+        }
+        int w = image.getWidth();
+        int h = image.getHeight();
+        boolean swap = orientation >= 5;
+        AffineTransform t = new AffineTransform();
+        switch (orientation) {
+            case 2 -> { t.translate(w, 0); t.scale(-1, 1); }
+            case 3 -> { t.translate(w, h); t.rotate(Math.PI); }
+            case 4 -> { t.translate(0, h); t.scale(1, -1); }
+            case 5 -> { t.rotate(-Math.PI / 2); t.scale(-1, 1); }
+            case 6 -> { t.translate(h, 0); t.rotate(Math.PI / 2); }
+            case 7 -> { t.scale(-1, 1); t.translate(-h, 0); t.translate(0, w); t.rotate(3 * Math.PI / 2); }
+            case 8 -> { t.translate(0, w); t.rotate(3 * Math.PI / 2); }
+            default -> { return image; }
+        }
+        int type = image.getType() == BufferedImage.TYPE_CUSTOM ? BufferedImage.TYPE_INT_RGB : image.getType();
+        BufferedImage upright = new BufferedImage(swap ? h : w, swap ? w : h, type);
+        Graphics2D g = upright.createGraphics();
+        try {
+            g.drawImage(image, t, null);
+        } finally {
+            g.dispose();
+        }
+        return upright;
+    }
+
+    private static String renamed(String filename, String extension) {
+        if (filename == null || filename.isBlank()) {
+            return "page" + extension;
+        }
+        int dot = filename.lastIndexOf('.');
+        return (dot > 0 ? filename.substring(0, dot) : filename) + extension;
+    }
+}
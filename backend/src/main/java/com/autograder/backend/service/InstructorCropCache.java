@@ -0,0 +1,183 @@
+package com.autograder.backend.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * InstructorCropCache
+ *
+ * Content-addressed cache of instructor key crops. Within an exam only the student paper
+ * changes, so the instructor crop for a (template, instructor key) pair is computed once:
+ * - key = SHA-256(template bytes) + SHA-256(instructor bytes)
+ * - in memory: LRU bounded by {@code grading.crop-cache.max-entries}, entries expire after the TTL
+ * - optional spill: entries evicted from memory are written as JSON under
+ *   {@code grading.crop-cache.spill-dir} and read back on a memory miss
+ * Concurrent misses for the same key share one OCR call.
+ */
+@Service
+@Slf4j
+public class InstructorCropCache {
+
+    private static final TypeReference<Map<String, byte[]>> CROPS = new TypeReference<>() {};
+
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final int maxEntries;
+    private final Duration ttl;
+    private final Path spillDir;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Mono<Map<String, byte[]>>> loading = new ConcurrentHashMap<>();
+
+    private record Entry(Map<String, byte[]> crops, Instant expiresAt) {
+    }
+
+    public InstructorCropCache(ObjectMapper objectMapper,
+                               @Value("${grading.crop-cache.enabled:true}") boolean enabled,
+                               @Value("${grading.crop-cache.max-entries:64}") int maxEntries,
+                               @Value("${grading.crop-cache.ttl-minutes:120}") long ttlMinutes,
+                               @Value("${grading.crop-cache.spill-dir:}") String spillDir) {
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.maxEntries = Math.max(1, maxEntries);
+        this.ttl = Duration.ofMinutes(ttlMinutes);
+        this.spillDir = spillDir == null || spillDir.isBlank() ? null : Paths.get(spillDir);
+    }
+
+    /**
+     * Return the instructor crops for this template/key pair, calling {@code loader} only on a miss.
+     */
+    public Mono<Map<String, byte[]>> getOrLoad(Resource templateFile,
+                                               Resource instructorFile,
+                                               Supplier<Mono<Map<String, byte[]>>> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+        return Mono.fromCallable(() -> key(templateFile, instructorFile))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(key -> {
+                    Map<String, byte[]> cached = lookup(key);
+                    if (cached != null) {
+                        log.debug("Instructor crop cache hit {}", key);
+                        return Mono.just(cached);
+                    }
+                    log.debug("Instructor crop cache miss {}", key);
+                    return loading.computeIfAbsent(key, k -> loader.get()
+                            .doOnNext(crops -> put(k, crops))
+                            .doFinally(signal -> loading.remove(k))
+                            .cache());
+                });
+    }
+
+    public Map<String, byte[]> getOrLoadBlocking(Resource templateFile,
+                                                 Resource instructorFile,
+                                                 Supplier<Mono<Map<String, byte[]>>> loader) {
+        return getOrLoad(templateFile, instructorFile, loader).block();
+    }
+
+    private Map<String, byte[]> lookup(String key) {
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (entry.expiresAt().isAfter(Instant.now())) {
+                    return entry.crops();
+                }
+                entries.remove(key);
+            }
+        }
+        Map<String, byte[]> spilled = readSpill(key);
+        if (spilled != null) {
+            put(key, spilled);
+        }
+        return spilled;
+    }
+
+    private void put(String key, Map<String, byte[]> crops) {
+        List<Map.Entry<String, Entry>> evicted = new ArrayList<>();
+        synchronized (entries) {
+            entries.put(key, new Entry(crops, Instant.now().plus(ttl)));
+            Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+            while (entries.size() > maxEntries && eldest.hasNext()) {
+                evicted.add(eldest.next());
+                eldest.remove();
+            }
+        }
+        evicted.forEach(e -> writeSpill(e.getKey(), e.getValue().crops()));
+    }
+
+    private Map<String, byte[]> readSpill(String key) {
+        if (spillDir == null) {
+            return null;
+        }
+        Path file = spillDir.resolve(key + ".json");
+        try {
+            if (!Files.exists(file)) {
+                return null;
+            }
+            if (Files.getLastModifiedTime(file).toInstant().plus(ttl).isBefore(Instant.now())) {
+                Files.deleteIfExists(file);
+                return null;
+            }
+            return objectMapper.readValue(file.toFile(), CROPS);
+        } catch (IOException e) {
+            log.warn("Could not read spilled instructor crops {}: {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeSpill(String key, Map<String, byte[]> crops) {
+        if (spillDir == null) {
+            return;
+        }
+        try {
+            Files.createDirectories(spillDir);
+            Path tmp = Files.createTempFile(spillDir, key, ".tmp");
+            objectMapper.writeValue(tmp.toFile(), crops);
+            Files.move(tmp, spillDir.resolve(key + ".json"), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            log.warn("Could not spill instructor crops {}: {}", key, e.getMessage());
+        }
+    }
+
+    private static String key(Resource templateFile, Resource instructorFile) {
+        return sha256(templateFile) + "-" + sha256(instructorFile);
+    }
+
+    private static String sha256(Resource resource) {
+        try (DigestInputStream in = new DigestInputStream(resource.getInputStream(), MessageDigest.getInstance("SHA-256"))) {
+            in.transferTo(OutputStream.nullOutputStream());
+            return HexFormat.of().formatHex(in.getMessageDigest().digest());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -1,26 +1,53 @@
 package com.autograder.backend.service;
 
+import com.autograder.backend.config.MLResilienceProperties;
+import com.autograder.backend.dto.AnalyticsSummaryDto;
+import com.autograder.backend.dto.BatchGradeRowDto;
+import com.autograder.backend.dto.VisionGradeResponseDto;
+import com.autograder.backend.dto.ZoneCropResponseDto;
+import com.autograder.backend.dto.ZoneGradeDto;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.http.MediaType;
 import org.springframework.http.client.MultipartBodyBuilder;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 /**
  * MLServiceClient v2 — Vision-First Pipeline
  * Matches the actual endpoints used by demo_harness.py.
+ *
+ * Responses are decoded straight into typed records (VisionGradeResponseDto,
+ * BatchGradeRowDto, AnalyticsSummaryDto) rather than generic maps.
+ *
+ * Every call has a non-blocking {@code *Reactive} variant returning a Mono;
+ * the plain methods block on it for callers that already own a worker thread.
+ * Calls to each service run under that service's {@link ResiliencePolicy}
+ * (ml-service.resilience.ocr/grading/analytics), which bounds every attempt
+ * with its own timeout.
  */
 @Service
 public class MLServiceClient {
 
     private final WebClient webClient;
+    private final ZoneCropResponseDecoder zoneCropResponseDecoder;
+    private final ImagePreprocessor imagePreprocessor;
+    private final ResiliencePolicy ocrPolicy;
+    private final ResiliencePolicy gradingPolicy;
+    private final ResiliencePolicy analyticsPolicy;
 
     @Value("${ml-service.ocr.url}")
     private String ocrUrl;
@@ -32,95 +59,176 @@ public class MLServiceClient {
     private String analyticsUrl;
 
     public MLServiceClient(WebClient.Builder builder) {
+        this(builder, new ZoneCropResponseDecoder(new ObjectMapper()), ImagePreprocessor.disabled(),
+                new TokenBucketRateLimiter(0, 1), 50 * 1024 * 1024, new MLResilienceProperties());
+    }
+
+    /**
+     * @param gradingRateLimiter quota guard for the grading model; callers take the permit for the
+     *                           first attempt, the grading policy takes one per retry or hedge
+     * @param maxResponseBytes cap on a buffered ML response (grading and analytics JSON); the
+     *                         crop-zones response is streamed through ZoneCropResponseDecoder,
+     *                         which applies the same cap. Request bodies are streamed and are not subject to it
+     */
+    @Autowired
+    public MLServiceClient(WebClient.Builder builder,
+                           ZoneCropResponseDecoder zoneCropResponseDecoder,
+                           ImagePreprocessor imagePreprocessor,
+                           TokenBucketRateLimiter gradingRateLimiter,
+                           @Value("${ml-service.max-response-bytes:52428800}") int maxResponseBytes,
+                           MLResilienceProperties resilience) {
+        this.zoneCropResponseDecoder = zoneCropResponseDecoder;
+        this.imagePreprocessor = imagePreprocessor;
+        this.ocrPolicy = new ResiliencePolicy("ocr", resilience.getOcr());
+        this.gradingPolicy = new ResiliencePolicy("grading", resilience.getGrading(), gradingRateLimiter::acquireReactive);
+        this.analyticsPolicy = new ResiliencePolicy("analytics", resilience.getAnalytics());
         this.webClient = builder
-                .codecs(c -> c.defaultCodecs().maxInMemorySize(50 * 1024 * 1024))
+                .codecs(c -> c.defaultCodecs().maxInMemorySize(maxResponseBytes))
                 .build();
     }
 
     /**
      * Step 1: Send two images to the OCR service (Template + Target).
-     * Returns a map of zone_id → base64 JPEG crop string + alignment metadata.
+     * Returns zone_id → JPEG crop bytes + alignment metadata, decoded incrementally
+     * as the response streams in (see ZoneCropResponseDecoder).
+     * Both pages go through ImagePreprocessor first (in parallel) and are sent with
+     * their detected media type.
      */
-    @SuppressWarnings("unchecked")
-    public Map<String, Object> cropZones(MultipartFile templateFile, MultipartFile targetFile) throws IOException {
-        MultipartBodyBuilder body = new MultipartBodyBuilder();
-
-        body.part("template_file", new ByteArrayResource(templateFile.getBytes()) {
-            @Override public String getFilename() { return templateFile.getOriginalFilename(); }
-        }).contentType(MediaType.IMAGE_PNG);
-
-        body.part("target_file", new ByteArrayResource(targetFile.getBytes()) {
-            @Override public String getFilename() { return targetFile.getOriginalFilename(); }
-        }).contentType(MediaType.IMAGE_PNG);
-
-        return webClient.post()
-                .uri(ocrUrl + "/api/ocr/crop-zones")
-                .contentType(MediaType.MULTIPART_FORM_DATA)
-                .body(BodyInserters.fromMultipartData(body.build()))
-                .retrieve()
-                .bodyToMono(Map.class)
-                .block(java.time.Duration.ofSeconds(300));
+    public ZoneCropResponseDto cropZones(MultipartFile templateFile, MultipartFile targetFile) {
+        return cropZones(asResource(templateFile), asResource(targetFile));
+    }
+
+    /**
+     * Step 1 for files that are already on disk (async jobs, stored submissions).
+     */
+    public ZoneCropResponseDto cropZones(Resource templateFile, Resource targetFile) {
+        return cropZonesReactive(templateFile, targetFile).block();
+    }
+
+    public Mono<ZoneCropResponseDto> cropZonesReactive(Resource templateFile, Resource targetFile) {
+        return Mono.zip(imagePreprocessor.prepareTemplateReactive(templateFile), imagePreprocessor.prepareReactive(targetFile))
+                .flatMap(pages -> {
+                    MultipartBodyBuilder body = new MultipartBodyBuilder();
+                    body.part("template_file", pages.getT1().resource()).contentType(pages.getT1().mediaType());
+                    body.part("target_file", pages.getT2().resource()).contentType(pages.getT2().mediaType());
+
+                    // Prepared once; retries resend the same bytes
+                    return ocrPolicy.execute(() -> webClient.post()
+                            .uri(ocrUrl + "/api/ocr/crop-zones")
+                            .contentType(MediaType.MULTIPART_FORM_DATA)
+                            .body(BodyInserters.fromMultipartData(body.build()))
+                            .retrieve()
+                            .bodyToFlux(DataBuffer.class)
+                            .as(zoneCropResponseDecoder::decode));
+                });
+    }
+
+    /**
+     * Wrap an upload as a named, re-readable resource for the multipart body.
+     * Reads go straight to the servlet container's multipart temp file and are
+     * streamed into the outgoing request as DataBuffers; the upload is never
+     * materialized as a byte array.
+     */
+    public static Resource asResource(MultipartFile file) {
+        return new AbstractResource() {
+            @Override public String getFilename() { return file.getOriginalFilename(); }
+            @Override public long contentLength() { return file.getSize(); }
+            @Override public InputStream getInputStream() throws IOException { return file.getInputStream(); }
+            @Override public String getDescription() { return "Upload [" + file.getOriginalFilename() + "]"; }
+        };
     }
 
     /**
      * Step 2 (Option A): Single-zone grading (Resilient Demo Mode).
      */
-    @SuppressWarnings("unchecked")
-    public Map<String, Object> gradeSingleZone(String studentId,
-                                                String zoneId,
-                                                String imageB64,
-                                                String referenceImageB64,
-                                                String rubric) {
+    public VisionGradeResponseDto gradeSingleZone(String studentId,
+                                                  String zoneId,
+                                                  byte[] image,
+                                                  byte[] referenceImage,
+                                                  String rubric) {
+        return gradeSingleZoneReactive(studentId, zoneId, image, referenceImage, rubric).block();
+    }
+
+    public Mono<VisionGradeResponseDto> gradeSingleZoneReactive(String studentId,
+                                                                String zoneId,
+                                                                byte[] image,
+                                                                byte[] referenceImage,
+                                                                String rubric) {
+        // byte[] values are base64-encoded by Jackson while the body is written
         Map<String, Object> payload = Map.of(
-                "student_image_b64", imageB64,
-                "reference_image_b64", referenceImageB64 != null ? referenceImageB64 : "",
+                "student_image_b64", image,
+                "reference_image_b64", referenceImage != null ? referenceImage : new byte[0],
                 "reference_solution", "Instructor solution provided in image.",
                 "rubric_text", rubric,
                 "question_text", "Zone " + zoneId
         );
 
-        return webClient.post()
+        return gradingPolicy.execute(() -> webClient.post()
                 .uri(gradingUrl + "/api/grade/vision")
                 .contentType(MediaType.APPLICATION_JSON)
                 .bodyValue(payload)
                 .retrieve()
-                .bodyToMono(Map.class)
-                .block(java.time.Duration.ofSeconds(300));
+                .bodyToMono(VisionGradeResponseDto.class));
     }
 
     /**
      * Step 2 (Option B): Batch vision grading.
      */
-    @SuppressWarnings("unchecked")
-    public List<Map<String, Object>> batchGrade(String studentId, Map<String, Object> zones, String rubric) {
+    public List<BatchGradeRowDto> batchGrade(String studentId, Map<String, Object> zones, String rubric) {
+        return batchGradeReactive(studentId, zones, rubric).block();
+    }
+
+    public Mono<List<BatchGradeRowDto>> batchGradeReactive(String studentId, Map<String, Object> zones, String rubric) {
         Map<String, Object> payload = Map.of(
                 "student_id", studentId,
                 "zones", zones,
                 "rubric", rubric
         );
 
-        return (List<Map<String, Object>>) (List<?>) webClient.post()
+        return gradingPolicy.execute(() -> webClient.post()
                 .uri(gradingUrl + "/api/grade/batch-vision")
                 .contentType(MediaType.APPLICATION_JSON)
                 .bodyValue(payload)
                 .retrieve()
-                .bodyToMono(List.class)
-                .block(java.time.Duration.ofSeconds(300));
+                .bodyToFlux(BatchGradeRowDto.class)
+                .collectList());
     }
 
     /**
      * Step 3: Class analytics aggregation.
      */
-    @SuppressWarnings("unchecked")
-    public Map<String, Object> getAnalytics(List<Map<String, Object>> results) {
+    public AnalyticsSummaryDto getAnalytics(List<ZoneGradeDto> results) {
+        return getAnalyticsReactive(results).block();
+    }
+
+    public Mono<AnalyticsSummaryDto> getAnalyticsReactive(List<ZoneGradeDto> results) {
         Map<String, Object> payload = Map.of("results", results);
 
-        return webClient.post()
+        return analyticsPolicy.execute(() -> webClient.post()
                 .uri(analyticsUrl + "/api/analytics/summary")
                 .contentType(MediaType.APPLICATION_JSON)
                 .bodyValue(payload)
                 .retrieve()
-                .bodyToMono(Map.class)
-                .block(java.time.Duration.ofSeconds(30));
+                .bodyToMono(AnalyticsSummaryDto.class));
+    }
+
+    /**
+     * Circuit breaker and bulkhead state per service.
+     */
+    public Map<String, Object> resilienceStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        policies().forEach((service, policy) -> stats.put(service, policy.stats()));
+        return stats;
+    }
+
+    /**
+     * Resilience policy per service name (ocr, grading, analytics).
+     */
+    public Map<String, ResiliencePolicy> policies() {
+        Map<String, ResiliencePolicy> policies = new LinkedHashMap<>();
+        policies.put("ocr", ocrPolicy);
+        policies.put("grading", gradingPolicy);
+        policies.put("analytics", analyticsPolicy);
+        return policies;
     }
 }
@@ -0,0 +1,28 @@
+package com.autograder.backend.service;
+
+import java.time.Duration;
+
+/**
+ * Raised without contacting an ML service when its circuit breaker is open
+ * or no bulkhead slot freed up within the configured wait.
+ */
+public class MLServiceUnavailableException extends RuntimeException {
+
+    private final String service;
+    private final Duration retryAfter;
+
+    public MLServiceUnavailableException(String service, String reason, Duration retryAfter) {
+        super(service + " ML service unavailable: " + reason);
+        this.service = service;
+        this.retryAfter = retryAfter;
+    }
+
+    public String getService() {
+        return service;
+    }
+
+    /** How long until the service is worth trying again (zero when unknown). */
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -0,0 +1,384 @@
+package com.autograder.backend.service;
+
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Resilience policy for one ML service: bulkhead, circuit breaker, per-attempt
+ * timeout, jittered retries and optional hedging, applied around a cold Mono.
+ *
+ * Each attempt first waits for a bulkhead slot (FIFO, without parking a thread), then asks
+ * the circuit breaker for permission. An open circuit fails at once, and a slot that does not
+ * free up within {@code max-wait-ms} fails the call, both with {@link MLServiceUnavailableException};
+ * callers treat that as the service being unavailable rather than as a bad answer.
+ * The breaker opens when the failure rate over the last {@code window-size}
+ * calls reaches {@code failure-rate-threshold}, and after {@code open-duration-ms}
+ * lets {@code half-open-calls} probes through to decide whether to close again.
+ * A permitted call that is cancelled before it answers (a losing hedge, a caller that went
+ * away) may already have reached the service: it keeps its probe permit and counts as
+ * neither success nor failure. A half-open phase in which no probe answered reopens the circuit.
+ *
+ * Transport errors, timeouts, 429 and 5xx responses are retried with
+ * exponential, jittered backoff; other 4xx responses and an unavailable service are not.
+ * With a positive {@code hedge-delay-ms} a second copy of the attempt is sent if
+ * the first has not answered by then, and whichever succeeds first wins. Only
+ * enable hedging for services where a duplicate request is affordable.
+ *
+ * A quota-limited service passes a {@code retryPermit}: the caller pays for the first
+ * attempt, and every retry or hedge waits for another permit before it is sent, so
+ * retries never spend more of the quota than the caller's limiter allows.
+ */
+@Slf4j
+public class ResiliencePolicy {
+
+    @Data
+    public static class Settings {
+        /** Deadline for a single attempt. */
+        private long timeoutMs = 300_000;
+        /** Concurrent calls allowed to this service (0 = unbounded). */
+        private int maxConcurrentCalls = 16;
+        /** How long a call may wait for a bulkhead slot before failing. */
+        private long maxWaitMs = 300_000;
+        private int maxRetries = 2;
+        private long initialBackoffMs = 500;
+        private long maxBackoffMs = 10_000;
+        /** Fraction of each backoff randomized, 0..1. */
+        private double jitter = 0.5;
+        /** Failure percentage (0..100) that opens the circuit. */
+        private int failureRateThreshold = 50;
+        /** Number of most recent calls the failure rate is computed over. */
+        private int windowSize = 20;
+        /** Calls needed in the window before the breaker may open. */
+        private int minimumCalls = 10;
+        private long openDurationMs = 30_000;
+        /** Probe calls let through while half-open. */
+        private int halfOpenCalls = 2;
+        /** Send a hedged duplicate after this delay (0 = no hedging). */
+        private long hedgeDelayMs = 0;
+    }
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final String name;
+    private final Settings settings;
+    private final Duration timeout;
+    private final Supplier<Mono<Void>> retryPermit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    // Bulkhead: slots in use and callers waiting for one, guarded by waiters
+    private final Deque<MonoSink<Slot>> waiters = new ArrayDeque<>();
+    private int slotsInUse;
+
+    // Circuit breaker state, guarded by this
+    private final boolean[] outcomes;
+    private int outcomeCount;
+    private int outcomeIndex;
+    private int failures;
+    private State state = State.CLOSED;
+    private long openedAtNanos;
+    private int halfOpenPermits;
+    private int halfOpenSuccesses;
+    private int halfOpenAbandoned;
+
+    public ResiliencePolicy(String name, Settings settings) {
+        this(name, settings, Mono::empty);
+    }
+
+    /**
+     * @param retryPermit completes when a retry or hedge may be sent (e.g. a rate limiter permit)
+     */
+    public ResiliencePolicy(String name, Settings settings, Supplier<Mono<Void>> retryPermit) {
+        this.name = name;
+        this.retryPermit = retryPermit;
+        this.settings = settings;
+        this.timeout = Duration.ofMillis(settings.getTimeoutMs());
+        this.outcomes = new boolean[Math.max(1, settings.getWindowSize())];
+    }
+
+    /**
+     * Apply the policy to a call. The supplier is invoked once per attempt
+     * (retries and hedges), so it must build a fresh request each time.
+     */
+    public <T> Mono<T> execute(Supplier<Mono<T>> call) {
+        return Mono.defer(() -> {
+            AtomicInteger attempts = new AtomicInteger();
+            return withRetries(Mono.defer(() -> attempts.getAndIncrement() == 0
+                    ? attempt(call)
+                    : retryPermit.get().then(Mono.defer(() -> attempt(call)))));
+        });
+    }
+
+    private <T> Mono<T> withRetries(Mono<T> attempt) {
+        Mono<T> hedged = settings.getHedgeDelayMs() > 0
+                ? Mono.firstWithValue(attempt,
+                                Mono.delay(Duration.ofMillis(settings.getHedgeDelayMs())).then(attempt))
+                        .onErrorMap(NoSuchElementException.class, ResiliencePolicy::firstHedgeFailure)
+                : attempt;
+        if (settings.getMaxRetries() <= 0) {
+            return hedged;
+        }
+        return hedged.retryWhen(Retry.backoff(settings.getMaxRetries(), Duration.ofMillis(settings.getInitialBackoffMs()))
+                .maxBackoff(Duration.ofMillis(settings.getMaxBackoffMs()))
+                .jitter(settings.getJitter())
+                .filter(ResiliencePolicy::isRetryable)
+                .doBeforeRetry(signal -> log.warn("Retrying {} call (attempt {}): {}",
+                        name, signal.totalRetries() + 2, signal.failure().getMessage()))
+                .onRetryExhaustedThrow((spec, signal) -> signal.failure()));
+    }
+
+    private <T> Mono<T> attempt(Supplier<Mono<T>> call) {
+        return acquireSlot().flatMap(slot -> {
+            if (!tryAcquirePermission()) {
+                slot.release();
+                return Mono.error(new MLServiceUnavailableException(name, "circuit breaker is open",
+                        retryAfter()));
+            }
+            inFlight.incrementAndGet();
+            AtomicBoolean settled = new AtomicBoolean();
+            return call.get()
+                    .timeout(timeout)
+                    .doOnSuccess(result -> {
+                        if (settled.compareAndSet(false, true)) {
+                            onResult(true);
+                        }
+                    })
+                    .doOnError(e -> {
+                        if (settled.compareAndSet(false, true)) {
+                            onResult(!countsAsFailure(e));
+                        }
+                    })
+                    .doOnCancel(() -> {
+                        if (settled.compareAndSet(false, true)) {
+                            onAbandoned();
+                        }
+                    })
+                    .doFinally(signal -> {
+                        inFlight.decrementAndGet();
+                        slot.release();
+                    });
+        });
+    }
+
+    /** A bulkhead slot; releasing it more than once is harmless. */
+    private static final class Slot {
+        static final Slot UNBOUNDED = new Slot(null);
+
+        private final ResiliencePolicy policy;
+        private final AtomicBoolean held = new AtomicBoolean(true);
+
+        Slot(ResiliencePolicy policy) {
+            this.policy = policy;
+        }
+
+        void release() {
+            if (policy != null && held.compareAndSet(true, false)) {
+                policy.releaseSlot();
+            }
+        }
+    }
+
+    /**
+     * Complete with a slot once one is free; waiters are served in arrival order.
+     * A slot handed to a caller that has just given up is discarded and released.
+     */
+    private Mono<Slot> acquireSlot() {
+        int max = settings.getMaxConcurrentCalls();
+        if (max <= 0) {
+            return Mono.just(Slot.UNBOUNDED);
+        }
+        return Mono.<Slot>create(sink -> {
+                    synchronized (waiters) {
+                        if (slotsInUse >= max) {
+                            waiters.addLast(sink);
+                            sink.onCancel(() -> {
+                                synchronized (waiters) {
+                                    waiters.remove(sink);
+                                }
+                            });
+                            return;
+                        }
+                        slotsInUse++;
+                    }
+                    sink.success(new Slot(this));
+                })
+                .doOnDiscard(Slot.class, Slot::release)
+                .timeout(Duration.ofMillis(Math.max(0, settings.getMaxWaitMs())),
+                        Mono.error(() -> new MLServiceUnavailableException(name, "no bulkhead slot within "
+                                + settings.getMaxWaitMs() + " ms", Duration.ZERO)));
+    }
+
+    private void releaseSlot() {
+        MonoSink<Slot> next;
+        synchronized (waiters) {
+            next = waiters.pollFirst();
+            if (next == null) {
+                slotsInUse--;
+                return;
+            }
+        }
+        next.success(new Slot(this)); // the slot passes straight to the next waiter
+    }
+
+    private synchronized boolean tryAcquirePermission() {
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openedAtNanos < Duration.ofMillis(settings.getOpenDurationMs()).toNanos()) {
+                return false;
+            }
+            transitionTo(State.HALF_OPEN);
+        }
+        if (state == State.HALF_OPEN) {
+            if (halfOpenPermits >= halfOpenCalls()) {
+                return false;
+            }
+            halfOpenPermits++;
+        }
+        return true;
+    }
+
+    /**
+     * A permitted call was cancelled before it answered. It may have reached the service, so
+     * a half-open probe permit is not handed back; the probe just gives no verdict.
+     */
+    private synchronized void onAbandoned() {
+        if (state == State.HALF_OPEN) {
+            halfOpenAbandoned++;
+            decideHalfOpen();
+        }
+    }
+
+    private synchronized void onResult(boolean success) {
+        if (state == State.HALF_OPEN) {
+            if (!success) {
+                transitionTo(State.OPEN);
+            } else {
+                halfOpenSuccesses++;
+                decideHalfOpen();
+            }
+            return;
+        }
+        if (state == State.OPEN) {
+            return; // a call that started before the circuit opened
+        }
+
+        if (outcomeCount == outcomes.length) {
+            if (!outcomes[outcomeIndex]) {
+                failures--;
+            }
+        } else {
+            outcomeCount++;
+        }
+        outcomes[outcomeIndex] = success;
+        outcomeIndex = (outcomeIndex + 1) % outcomes.length;
+        if (!success) {
+            failures++;
+        }
+
+        if (outcomeCount >= Math.max(1, settings.getMinimumCalls())
+                && failures * 100 >= settings.getFailureRateThreshold() * outcomeCount) {
+            transitionTo(State.OPEN);
+        }
+    }
+
+    /** Close once every probe that gave a verdict succeeded; reopen if none did. */
+    private void decideHalfOpen() {
+        int verdicts = halfOpenCalls() - halfOpenAbandoned;
+        if (verdicts <= 0) {
+            transitionTo(State.OPEN);
+        } else if (halfOpenSuccesses >= verdicts) {
+            transitionTo(State.CLOSED);
+        }
+    }
+
+    private int halfOpenCalls() {
+        return Math.max(1, settings.getHalfOpenCalls());
+    }
+
+    private void transitionTo(State next) {
+        log.warn("Circuit breaker for {} ML service: {} -> {}", name, state, next);
+        state = next;
+        outcomeCount = 0;
+        outcomeIndex = 0;
+        failures = 0;
+        halfOpenPermits = 0;
+        halfOpenSuccesses = 0;
+        halfOpenAbandoned = 0;
+        if (next == State.OPEN) {
+            openedAtNanos = System.nanoTime();
+        }
+    }
+
+    private synchronized Duration retryAfter() {
+        long remaining = Duration.ofMillis(settings.getOpenDurationMs()).toNanos() - (System.nanoTime() - openedAtNanos);
+        return Duration.ofNanos(Math.max(0, remaining));
+    }
+
+    /** firstWithValue reports "all sources failed"; surface the underlying failure for the retry filter. */
+    private static Throwable firstHedgeFailure(NoSuchElementException e) {
+        List<Throwable> failures = new ArrayList<>();
+        if (e.getCause() != null) {
+            failures.addAll(Exceptions.unwrapMultiple(e.getCause()));
+        }
+        failures.addAll(Arrays.asList(e.getSuppressed()));
+        return failures.isEmpty() ? e : failures.get(0);
+    }
+
+    /** Client errors say nothing about the service's health and do not trip the breaker. */
+    private static boolean countsAsFailure(Throwable e) {
+        if (e instanceof WebClientResponseException response) {
+            return response.getStatusCode().is5xxServerError() || response.getStatusCode().value() == 429;
+        }
+        return true;
+    }
+
+    private static boolean isRetryable(Throwable e) {
+        if (e instanceof MLServiceUnavailableException) {
+            return false;
+        }
+        if (e instanceof WebClientResponseException response) {
+            return response.getStatusCode().is5xxServerError() || response.getStatusCode().value() == 429;
+        }
+        return e instanceof WebClientRequestException || e instanceof TimeoutException;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("state", state.name());
+        stats.put("in_flight", inFlight.get());
+        stats.put("max_concurrent_calls", settings.getMaxConcurrentCalls());
+        synchronized (waiters) {
+            stats.put("waiting", waiters.size());
+        }
+        stats.put("window_calls", outcomeCount);
+        stats.put("window_failures", failures);
+        stats.put("hedging", settings.getHedgeDelayMs() > 0);
+        return stats;
+    }
+}
@@ -0,0 +1,35 @@
+package com.autograder.backend.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * Content-addressed storage for uploaded papers.
+ *
+ * Blobs are named by the SHA-256 of their bytes, so storing the same file twice keeps one copy.
+ * Stored blobs are local files: the grading pipeline reads them by path and downloads are sent
+ * straight from them.
+ */
+public interface SubmissionBlobStore {
+
+    /**
+     * @param digest       hex SHA-256 of the content
+     * @param size         content length in bytes
+     * @param path         where the blob lives
+     * @param deduplicated true if an identical blob was already stored and this upload was discarded
+     */
+    record StoredBlob(String digest, long size, Path path, boolean deduplicated) {
+    }
+
+    /**
+     * Store a stream, hashing it as it is read. The blob becomes visible only once complete.
+     */
+    StoredBlob store(InputStream content) throws IOException;
+
+    /**
+     * @return the blob's location, or empty if no blob with that digest is stored
+     */
+    Optional<Path> find(String digest);
+}
@@ -0,0 +1,89 @@
+package com.autograder.backend.service;
+
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token-bucket rate limiter used to protect the grading model's API quota.
+ *
+ * Permits refill continuously at {@code permitsPerMinute} up to {@code burst}.
+ * A caller may reserve a permit ahead of time; the bucket then goes into debt
+ * and the reservation reports how long the caller must wait before using it.
+ * A caller that gives up while waiting (interrupt, cancelled subscription) hands
+ * its reservation back, so abandoned requests leave no debt behind.
+ * A non-positive rate disables limiting.
+ */
+public class TokenBucketRateLimiter {
+
+    private final double permitsPerNano;
+    private final double capacity;
+
+    private double tokens;
+    private long lastRefillNanos;
+
+    public TokenBucketRateLimiter(double permitsPerMinute, int burst) {
+        this.permitsPerNano = permitsPerMinute / TimeUnit.MINUTES.toNanos(1);
+        this.capacity = Math.max(1, burst);
+        this.tokens = this.capacity;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * Reserve one permit.
+     *
+     * @return nanoseconds the caller must wait before the permit becomes valid (0 if available now)
+     */
+    public synchronized long reserve() {
+        if (permitsPerNano <= 0) {
+            return 0L;
+        }
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * permitsPerNano);
+        lastRefillNanos = now;
+
+        tokens -= 1;
+        return tokens >= 0 ? 0L : (long) Math.ceil(-tokens / permitsPerNano);
+    }
+
+    /**
+     * Return a reserved permit that was never used.
+     */
+    public synchronized void refund() {
+        if (permitsPerNano <= 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * permitsPerNano + 1);
+        lastRefillNanos = now;
+    }
+
+    /**
+     * Block the calling thread until one permit is available.
+     */
+    public void acquire() throws InterruptedException {
+        long waitNanos = reserve();
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                refund();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Non-blocking variant of {@link #acquire()}: completes once the reserved permit is valid.
+     * Cancelling before then refunds the reservation.
+     */
+    public Mono<Void> acquireReactive() {
+        return Mono.defer(() -> {
+            long waitNanos = reserve();
+            return waitNanos > 0
+                    ? Mono.delay(Duration.ofNanos(waitNanos)).doOnCancel(this::refund).then()
+                    : Mono.empty();
+        });
+    }
+}
@@ -0,0 +1,162 @@
+package com.autograder.backend.service;
+
+import com.autograder.backend.dto.ZoneCropResponseDto;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Incremental decoder for the crop-zones response.
+ *
+ * The body is fed to Jackson's non-blocking parser one network buffer at a time and each
+ * buffer is released as soon as it is parsed, so the full JSON document is never held.
+ * Every crop's base64 value is decoded straight into a byte array with
+ * {@link JsonParser#getBinaryValue()}; no String is created per crop.
+ * The decoded crops do stay in memory, so a body larger than
+ * {@code ml-service.max-response-bytes} fails with DataBufferLimitException, as a
+ * buffered response would.
+ */
+@Component
+public class ZoneCropResponseDecoder {
+
+    private static final long DEFAULT_MAX_BYTES = 50L * 1024 * 1024;
+
+    private final ObjectMapper objectMapper;
+    private final long maxBytes;
+
+    public ZoneCropResponseDecoder(ObjectMapper objectMapper) {
+        this(objectMapper, DEFAULT_MAX_BYTES);
+    }
+
+    @Autowired
+    public ZoneCropResponseDecoder(ObjectMapper objectMapper,
+                                   @Value("${ml-service.max-response-bytes:52428800}") long maxBytes) {
+        this.objectMapper = objectMapper;
+        this.maxBytes = maxBytes;
+    }
+
+    public Mono<ZoneCropResponseDto> decode(Flux<DataBuffer> body) {
+        return Mono.defer(() -> {
+            State state = new State(newParser(), maxBytes);
+            return body
+                    .doOnNext(buffer -> {
+                        try {
+                            state.feed(buffer);
+                        } finally {
+                            DataBufferUtils.release(buffer);
+                        }
+                    })
+                    .then(Mono.fromCallable(state::finish))
+                    .doFinally(signal -> state.close());
+        });
+    }
+
+    private JsonParser newParser() {
+        try {
+            return objectMapper.getFactory().createNonBlockingByteArrayParser();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static final class State {
+
+        private final JsonParser parser;
+        private final long maxBytes;
+        private final ZoneCropResponseDto result = new ZoneCropResponseDto();
+        private long received;
+        private int depth;
+        private String topLevelField;
+        private String zoneId;
+
+        State(JsonParser parser, long maxBytes) {
+            this.parser = parser;
+            this.maxBytes = maxBytes;
+        }
+
+        void feed(DataBuffer buffer) {
+            received += buffer.readableByteCount();
+            if (maxBytes > 0 && received > maxBytes) {
+                throw new DataBufferLimitException("Crop-zones response exceeds " + maxBytes + " bytes");
+            }
+            byte[] chunk = new byte[buffer.readableByteCount()];
+            buffer.read(chunk);
+            try {
+                ((ByteArrayFeeder) parser.getNonBlockingInputFeeder()).feedInput(chunk, 0, chunk.length);
+                drain();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        ZoneCropResponseDto finish() throws IOException {
+            parser.getNonBlockingInputFeeder().endOfInput();
+            drain();
+            if (depth != 0) {
+                throw new IOException("Truncated crop-zones response");
+            }
+            return result;
+        }
+
+        void close() {
+            try {
+                parser.close();
+            } catch (IOException ignored) {
+                // nothing left to release
+            }
+        }
+
+        private boolean inCrops() {
+            return depth == 2 && "crops".equals(topLevelField);
+        }
+
+        private void drain() throws IOException {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+                switch (token) {
+                    case START_OBJECT, START_ARRAY -> depth++;
+                    case END_OBJECT, END_ARRAY -> depth--;
+                    case FIELD_NAME -> {
+                        if (depth == 1) {
+                            topLevelField = parser.currentName();
+                        } else if (inCrops()) {
+                            zoneId = parser.currentName();
+                        }
+                    }
+                    case VALUE_STRING -> {
+                        if (inCrops()) {
+                            result.getCrops().put(zoneId, parser.getBinaryValue());
+                        }
+                    }
+                    case VALUE_NUMBER_INT, VALUE_NUMBER_FLOAT -> {
+                        if (depth == 1 && "alignment_confidence".equals(topLevelField)) {
+                            result.setAlignmentConfidence(parser.getDoubleValue());
+                        } else if (depth == 1 && "total_processing_time".equals(topLevelField)) {
+                            result.setTotalProcessingTime(parser.getDoubleValue());
+                        }
+                    }
+                    case VALUE_TRUE, VALUE_FALSE -> {
+                        if (depth == 1 && "cache_hit".equals(topLevelField)) {
+                            result.setCacheHit(token == JsonToken.VALUE_TRUE);
+                        }
+                    }
+                    default -> {
+                        // nulls and embedded objects carry nothing we use
+                    }
+                }
+            }
+        }
+    }
+}
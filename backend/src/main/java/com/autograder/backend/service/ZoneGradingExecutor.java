@@ -0,0 +1,363 @@
+package com.autograder.backend.service;
+
+import com.autograder.backend.dto.VisionGradeResponseDto;
+import com.autograder.backend.dto.ZoneGradeDto;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ZoneGradingExecutor
+ *
+ * Fans the zones of a paper out to the grading engine in parallel.
+ * - Blocking modes: at most {@code grading.zone.max-in-flight} calls run at once, shared by all requests
+ * - Every call first takes a permit from a token bucket to stay inside the model's quota
+ * A zone that fails is logged and dropped, matching the previous serial behaviour. An
+ * unavailable grading service (circuit open, no bulkhead slot in time) fails the whole paper
+ * with MLServiceUnavailableException instead, so a partial total is never reported as the score.
+ *
+ * Two blocking execution modes:
+ * - platform: zones run on a fixed pool of max-in-flight platform threads
+ * - virtual:  each paper opens a scope with one virtual thread per zone; the scope owns its
+ *             threads, so a zone timeout (or a failure with fail-fast) cancels the siblings
+ *             and nothing outlives the call. Enabled by {@code grading.zone.virtual-threads},
+ *             which defaults to {@code spring.threads.virtual.enabled}.
+ *
+ * Before calling the model each zone is looked up in the ZoneResultCache (when enabled), so
+ * byte-identical answers to the same question are graded once.
+ *
+ * With {@code grading.batching.enabled} every zone is routed through the AdaptiveZoneBatcher
+ * instead, which packs zones from all concurrent papers into /api/grade/batch-vision calls.
+ * All zones of a paper are queued at once, in every mode: the batcher bounds the batch calls
+ * in flight, so max-in-flight must not also cap how many zones are waiting to be batched.
+ *
+ * The reactive variant does not park threads: rate-limit waits become timer delays and
+ * max-in-flight bounds the flatMap concurrency of each pipeline, not all pipelines together.
+ * The global cap on reactive calls is the grading service's bulkhead
+ * ({@code ml-service.resilience.grading.max-concurrent-calls}).
+ */
+@Service
+@Slf4j
+public class ZoneGradingExecutor {
+
+    private final MLServiceClient mlServiceClient;
+    private final TokenBucketRateLimiter rateLimiter;
+    private final AdaptiveZoneBatcher batcher;  // null unless grading.batching.enabled
+    private final ZoneResultCache resultCache;  // null unless grading.result-cache.enabled
+    private final GradingMetrics metrics;
+    private final int maxInFlight;
+    private final boolean virtualThreads;
+    private final Duration zoneTimeout;
+    private final boolean failFast;
+
+    private final ExecutorService workers;  // platform mode only
+    private final Semaphore inFlight;       // virtual mode only
+
+    public ZoneGradingExecutor(MLServiceClient mlServiceClient,
+                               TokenBucketRateLimiter gradingRateLimiter,
+                               AdaptiveZoneBatcher batcher,
+                               ZoneResultCache resultCache,
+                               GradingMetrics metrics,
+                               @Value("${grading.zone.max-in-flight:4}") int maxInFlight,
+                               @Value("${grading.zone.virtual-threads:${spring.threads.virtual.enabled:false}}") boolean virtualThreads,
+                               @Value("${grading.zone.timeout-seconds:600}") long timeoutSeconds,
+                               @Value("${grading.zone.fail-fast:false}") boolean failFast) {
+        this.mlServiceClient = mlServiceClient;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.rateLimiter = gradingRateLimiter;
+        this.batcher = batcher != null && batcher.isEnabled() ? batcher : null;
+        this.resultCache = resultCache != null && resultCache.isEnabled() ? resultCache : null;
+        this.metrics = metrics;
+        this.virtualThreads = virtualThreads;
+        this.zoneTimeout = Duration.ofSeconds(timeoutSeconds);
+        this.failFast = failFast;
+        this.workers = virtualThreads ? null : Executors.newFixedThreadPool(this.maxInFlight, namedThreads("zone-grader-"));
+        this.inFlight = virtualThreads ? new Semaphore(this.maxInFlight) : null;
+        log.info("Zone grading: mode={}, max-in-flight={}, batching={}",
+                virtualThreads ? "virtual" : "platform", maxInFlight, this.batcher != null);
+    }
+
+    /**
+     * Grade every student zone against the matching instructor zone.
+     *
+     * @return normalized per-zone results, in the iteration order of {@code studentCrops}
+     */
+    public List<ZoneGradeDto> gradeZones(String studentId,
+                                         Map<String, byte[]> studentCrops,
+                                         Map<String, byte[]> instructorCrops,
+                                         String rubric) throws InterruptedException {
+        if (batcher != null) {
+            // Zones wait in the batcher's queue rather than on max-in-flight threads
+            List<ZoneGradeDto> graded = gradeZonesReactive(studentId, studentCrops, instructorCrops, rubric)
+                    .collectList()
+                    .block();
+            return graded != null ? graded : List.of();
+        }
+        return virtualThreads
+                ? gradeZonesStructured(studentId, studentCrops, instructorCrops, rubric)
+                : gradeZonesOnPool(studentId, studentCrops, instructorCrops, rubric);
+    }
+
+    private List<ZoneGradeDto> gradeZonesOnPool(String studentId,
+                                                Map<String, byte[]> studentCrops,
+                                                Map<String, byte[]> instructorCrops,
+                                                String rubric) throws InterruptedException {
+        long deadline = System.nanoTime() + zoneTimeout.toNanos();
+        List<String> zoneIds = new ArrayList<>(studentCrops.keySet());
+        List<Future<ZoneGradeDto>> futures = new ArrayList<>(zoneIds.size());
+
+        for (String zoneId : zoneIds) {
+            futures.add(workers.submit(() -> gradeOne(studentId, zoneId, studentCrops, instructorCrops, rubric)));
+        }
+
+        List<ZoneGradeDto> gradingResults = new ArrayList<>(zoneIds.size());
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    ZoneGradeDto normalized = futures.get(i).get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (normalized != null) {
+                        gradingResults.add(normalized);
+                    } else {
+                        metrics.zoneFailed("empty");
+                    }
+                } catch (TimeoutException e) {
+                    log.error("Zone grading timed out after {}s; cancelling {} unfinished zones",
+                            zoneTimeout.toSeconds(), futures.size() - i);
+                    metrics.zonesFailed("timeout", futures.size() - i);
+                    break;
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof MLServiceUnavailableException unavailable) {
+                        metrics.zonesFailed("unavailable", futures.size() - i);
+                        throw unavailable;
+                    }
+                    log.error("Failed to grade zone {}: {}", zoneIds.get(i), e.getCause().getMessage());
+                    metrics.zoneFailed("error");
+                }
+            }
+        } finally {
+            // Frees the pool threads of zones still running after a timeout, failure or interrupt
+            futures.forEach(f -> f.cancel(true));
+        }
+        return gradingResults;
+    }
+
+    private List<ZoneGradeDto> gradeZonesStructured(String studentId,
+                                                    Map<String, byte[]> studentCrops,
+                                                    Map<String, byte[]> instructorCrops,
+                                                    String rubric) throws InterruptedException {
+        long deadline = System.nanoTime() + zoneTimeout.toNanos();
+        Map<Future<ZoneGradeDto>, String> zoneOf = new HashMap<>();
+        Map<String, ZoneGradeDto> byZone = new HashMap<>();
+
+        // The scope's close() joins every thread it started, so no zone outlives this call
+        try (ExecutorService scope = Executors.newVirtualThreadPerTaskExecutor()) {
+            CompletionService<ZoneGradeDto> completion = new ExecutorCompletionService<>(scope);
+            for (String zoneId : studentCrops.keySet()) {
+                zoneOf.put(completion.submit(() -> {
+                    inFlight.acquire();
+                    try {
+                        return gradeOne(studentId, zoneId, studentCrops, instructorCrops, rubric);
+                    } finally {
+                        inFlight.release();
+                    }
+                }), zoneId);
+            }
+
+            try {
+                for (int done = 0; done < zoneOf.size(); done++) {
+                    Future<ZoneGradeDto> next = completion.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        log.error("Zone grading timed out after {}s; cancelling {} unfinished zones",
+                                zoneTimeout.toSeconds(), zoneOf.size() - done);
+                        metrics.zonesFailed("timeout", zoneOf.size() - done);
+                        break;
+                    }
+                    String zoneId = zoneOf.get(next);
+                    try {
+                        ZoneGradeDto normalized = next.get();
+                        if (normalized != null) {
+                            byZone.put(zoneId, normalized);
+                        } else {
+                            metrics.zoneFailed("empty");
+                        }
+                    } catch (ExecutionException e) {
+                        if (e.getCause() instanceof MLServiceUnavailableException unavailable) {
+                            metrics.zonesFailed("unavailable", zoneOf.size() - done);
+                            throw unavailable;
+                        }
+                        log.error("Failed to grade zone {}: {}", zoneId, e.getCause().getMessage());
+                        metrics.zoneFailed("error");
+                        if (failFast) {
+                            throw new IllegalStateException("Zone " + zoneId + " failed: " + e.getCause().getMessage(), e.getCause());
+                        }
+                    }
+                }
+            } finally {
+                zoneOf.keySet().forEach(f -> f.cancel(true));
+            }
+        }
+
+        List<ZoneGradeDto> gradingResults = new ArrayList<>(byZone.size());
+        for (String zoneId : studentCrops.keySet()) {
+            ZoneGradeDto normalized = byZone.get(zoneId);
+            if (normalized != null) {
+                gradingResults.add(normalized);
+            }
+        }
+        return gradingResults;
+    }
+
+    private ZoneGradeDto gradeOne(String studentId,
+                                  String zoneId,
+                                  Map<String, byte[]> studentCrops,
+                                  Map<String, byte[]> instructorCrops,
+                                  String rubric) throws InterruptedException {
+        ZoneResultCache.Fingerprint fingerprint = resultCache != null
+                ? resultCache.fingerprint(studentCrops.get(zoneId), instructorCrops.get(zoneId), rubric)
+                : null;
+        ZoneGradeDto cached = resultCache != null ? resultCache.lookup(fingerprint, studentId, zoneId) : null;
+        if (cached != null) {
+            log.info("Zone {} reused a cached grade", zoneId);
+            return cached;
+        }
+
+        recordRequest(studentCrops.get(zoneId), instructorCrops.get(zoneId));
+        rateLimiter.acquire();
+        log.info("Grading Zone {}...", zoneId);
+        VisionGradeResponseDto result = metrics.observeBlocking(GradingMetrics.ZONE_GRADE, () -> mlServiceClient.gradeSingleZone(
+                studentId, zoneId, studentCrops.get(zoneId), instructorCrops.get(zoneId), rubric));
+        ZoneGradeDto normalized = result != null ? normalize(studentId, zoneId, result) : null;
+        if (resultCache != null) {
+            resultCache.put(fingerprint, normalized);
+        }
+        return normalized;
+    }
+
+    /**
+     * Non-blocking variant of {@link #gradeZones}: emits normalized results in zone order.
+     */
+    public Flux<ZoneGradeDto> gradeZonesReactive(String studentId,
+                                                 Map<String, byte[]> studentCrops,
+                                                 Map<String, byte[]> instructorCrops,
+                                                 String rubric) {
+        return Flux.fromIterable(studentCrops.keySet())
+                .flatMapSequential(zoneId -> gradeZoneReactive(studentId, zoneId, studentCrops, instructorCrops, rubric),
+                        zoneConcurrency(studentCrops));
+    }
+
+    /**
+     * Like {@link #gradeZonesReactive} but emits each zone the moment it is graded (completion order).
+     */
+    public Flux<ZoneGradeDto> streamZonesReactive(String studentId,
+                                                  Map<String, byte[]> studentCrops,
+                                                  Map<String, byte[]> instructorCrops,
+                                                  String rubric) {
+        return Flux.fromIterable(studentCrops.keySet())
+                .flatMap(zoneId -> gradeZoneReactive(studentId, zoneId, studentCrops, instructorCrops, rubric),
+                        zoneConcurrency(studentCrops));
+    }
+
+    /** Batched zones are all handed to the batcher at once; it limits the calls. */
+    private int zoneConcurrency(Map<String, byte[]> studentCrops) {
+        return batcher != null ? Math.max(1, studentCrops.size()) : maxInFlight;
+    }
+
+    private Mono<ZoneGradeDto> gradeZoneReactive(String studentId,
+                                                 String zoneId,
+                                                 Map<String, byte[]> studentCrops,
+                                                 Map<String, byte[]> instructorCrops,
+                                                 String rubric) {
+        if (resultCache == null) {
+            return gradeUncachedReactive(studentId, zoneId, studentCrops, instructorCrops, rubric);
+        }
+        // Decoding the crop for its hash is CPU work; keep it off the HTTP event loop
+        return Mono.fromCallable(() -> Optional.ofNullable(
+                        resultCache.fingerprint(studentCrops.get(zoneId), instructorCrops.get(zoneId), rubric)))
+                .subscribeOn(Schedulers.parallel())
+                .flatMap(fingerprint -> {
+                    ZoneGradeDto cached = resultCache.lookup(fingerprint.orElse(null), studentId, zoneId);
+                    if (cached != null) {
+                        log.info("Zone {} reused a cached grade", zoneId);
+                        return Mono.just(cached);
+                    }
+                    return gradeUncachedReactive(studentId, zoneId, studentCrops, instructorCrops, rubric)
+                            .doOnNext(normalized -> resultCache.put(fingerprint.orElse(null), normalized));
+                });
+    }
+
+    private Mono<ZoneGradeDto> gradeUncachedReactive(String studentId,
+                                                     String zoneId,
+                                                     Map<String, byte[]> studentCrops,
+                                                     Map<String, byte[]> instructorCrops,
+                                                     String rubric) {
+        Mono<ZoneGradeDto> graded = batcher != null
+                ? metrics.observe(GradingMetrics.ZONE_GRADE,
+                        batcher.submit(studentId, zoneId, studentCrops.get(zoneId), instructorCrops.get(zoneId), rubric))
+                : rateLimiter.acquireReactive()
+                        .then(metrics.observe(GradingMetrics.ZONE_GRADE, Mono.defer(() -> {
+                            log.info("Grading Zone {}...", zoneId);
+                            return mlServiceClient.gradeSingleZoneReactive(
+                                    studentId, zoneId, studentCrops.get(zoneId), instructorCrops.get(zoneId), rubric);
+                        })))
+                        .map(result -> normalize(studentId, zoneId, result));
+
+        return graded
+                .doOnSubscribe(s -> recordRequest(studentCrops.get(zoneId), instructorCrops.get(zoneId)))
+                .onErrorResume(e -> !(e instanceof MLServiceUnavailableException), e -> {
+                    log.error("Failed to grade zone {}: {}", zoneId, e.getMessage());
+                    metrics.zoneFailed("error");
+                    return Mono.empty();
+                });
+    }
+
+    private void recordRequest(byte[] studentCrop, byte[] instructorCrop) {
+        metrics.recordPayload("zone_request",
+                (studentCrop != null ? studentCrop.length : 0) + (instructorCrop != null ? instructorCrop.length : 0));
+    }
+
+    /**
+     * Map a grading-engine response onto the shape expected by the analytics service.
+     */
+    public static ZoneGradeDto normalize(String studentId, String zoneId, VisionGradeResponseDto result) {
+        return new ZoneGradeDto(studentId, zoneId, result.totalScore(), result.maxScore(),
+                result.overallConfidence(), result.reasoning(), result.discoveredConcept());
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (workers != null) {
+            workers.shutdownNow();
+        }
+    }
+
+    private static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
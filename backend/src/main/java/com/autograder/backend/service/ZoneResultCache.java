@@ -0,0 +1,257 @@
+package com.autograder.backend.service;
+
+import com.autograder.backend.dto.ZoneGradeDto;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ZoneResultCache
+ *
+ * Reuses grades for answers that are the same. Off by default ({@code grading.result-cache.enabled}).
+ * Each graded zone is stored under
+ * - a context: SHA-256 of the reference (instructor) crop + rubric, so grades never cross questions
+ * - the SHA-256 of the student crop bytes; only a byte-identical crop is an exact hit
+ * Near matching is opt-in: with {@code grading.result-cache.max-distance} > 0 a 64-bit difference
+ * hash (dHash) of the crop is stored as well, and a miss falls back to the closest stored hash
+ * within that many bits. A 9x8 dHash mostly captures the printed header and blank paper, so
+ * near hits are always returned with {@code requires_review} set for a person to confirm.
+ *
+ * Contexts and the entries inside each are LRU-bounded and expire after the TTL.
+ */
+@Service
+@Slf4j
+public class ZoneResultCache {
+
+    private static final int HASH_WIDTH = 9;
+    private static final int HASH_HEIGHT = 8;
+
+    /**
+     * Cache coordinates of one student crop; {@code hash} is null unless near matching is on
+     * and the crop could be decoded.
+     */
+    public record Fingerprint(String context, String digest, Long hash) {
+    }
+
+    private record Entry(ZoneGradeDto result, Long hash, Instant expiresAt) {
+    }
+
+    private final boolean enabled;
+    private final int maxDistance;
+    private final int maxContexts;
+    private final int maxEntriesPerContext;
+    private final Duration ttl;
+
+    private final LinkedHashMap<String, LinkedHashMap<String, Entry>> contexts = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final AtomicLong exactHits = new AtomicLong();
+    private final AtomicLong nearHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public ZoneResultCache(MeterRegistry meterRegistry,
+                           @Value("${grading.result-cache.enabled:false}") boolean enabled,
+                           @Value("${grading.result-cache.max-distance:0}") int maxDistance,
+                           @Value("${grading.result-cache.max-contexts:256}") int maxContexts,
+                           @Value("${grading.result-cache.max-entries-per-context:2000}") int maxEntriesPerContext,
+                           @Value("${grading.result-cache.ttl-minutes:1440}") long ttlMinutes) {
+        this.enabled = enabled;
+        this.maxDistance = Math.max(0, maxDistance);
+        this.maxContexts = Math.max(1, maxContexts);
+        this.maxEntriesPerContext = Math.max(1, maxEntriesPerContext);
+        this.ttl = Duration.ofMinutes(ttlMinutes);
+
+        register(meterRegistry, "exact", exactHits);
+        register(meterRegistry, "near", nearHits);
+        register(meterRegistry, "miss", misses);
+    }
+
+    private static void register(MeterRegistry meterRegistry, String result, AtomicLong count) {
+        FunctionCounter.builder("grading.result.cache", count, AtomicLong::get)
+                .description("Zone result cache lookups by outcome")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Compute the cache coordinates for a student crop.
+     */
+    public Fingerprint fingerprint(byte[] studentCrop, byte[] referenceCrop, String rubric) {
+        if (!enabled || studentCrop == null) {
+            return null;
+        }
+        return new Fingerprint(context(referenceCrop, rubric), sha256Hex(studentCrop), nearMatchHash(studentCrop));
+    }
+
+    private Long nearMatchHash(byte[] studentCrop) {
+        if (maxDistance == 0) {
+            return null;
+        }
+        try {
+            BufferedImage image = ImageIO.read(new ByteArrayInputStream(studentCrop));
+            return image != null ? differenceHash(image) : null;
+        } catch (IOException e) {
+            log.debug("Could not hash crop: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @return a copy of the cached normalized result re-labelled for this student/zone, or null on a miss
+     */
+    public ZoneGradeDto lookup(Fingerprint fingerprint, String studentId, String zoneId) {
+        if (fingerprint == null) {
+            return null;
+        }
+        Entry match = null;
+        boolean exact = false;
+        synchronized (contexts) {
+            LinkedHashMap<String, Entry> entries = contexts.get(fingerprint.context());
+            if (entries != null) {
+                Instant now = Instant.now();
+                Entry candidate = entries.get(fingerprint.digest());
+                if (candidate != null && candidate.expiresAt().isAfter(now)) {
+                    match = candidate;
+                    exact = true;
+                } else if (fingerprint.hash() != null) {
+                    int best = maxDistance + 1;
+                    for (Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator(); it.hasNext(); ) {
+                        Entry e = it.next().getValue();
+                        if (!e.expiresAt().isAfter(now)) {
+                            it.remove();
+                            continue;
+                        }
+                        if (e.hash() == null) {
+                            continue;
+                        }
+                        int distance = Long.bitCount(e.hash() ^ fingerprint.hash());
+                        if (distance < best) {
+                            best = distance;
+                            match = e;
+                        }
+                    }
+                }
+            }
+        }
+
+        if (match == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        if (exact) {
+            exactHits.incrementAndGet();
+            return match.result().withIds(studentId, zoneId);
+        }
+        nearHits.incrementAndGet();
+        return match.result().withIds(studentId, zoneId).forReview();
+    }
+
+    public void put(Fingerprint fingerprint, ZoneGradeDto normalizedResult) {
+        if (fingerprint == null || normalizedResult == null) {
+            return;
+        }
+        synchronized (contexts) {
+            LinkedHashMap<String, Entry> entries = contexts.computeIfAbsent(
+                    fingerprint.context(), c -> new LinkedHashMap<>(16, 0.75f, true));
+            entries.put(fingerprint.digest(),
+                    new Entry(normalizedResult, fingerprint.hash(), Instant.now().plus(ttl)));
+            trim(entries.entrySet().iterator(), entries.size() - maxEntriesPerContext);
+            trim(contexts.entrySet().iterator(), contexts.size() - maxContexts);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        long exact = exactHits.get();
+        long near = nearHits.get();
+        long miss = misses.get();
+        long total = exact + near + miss;
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("near_match", maxDistance > 0);
+        stats.put("exact_hits", exact);
+        stats.put("near_hits", near);
+        stats.put("misses", miss);
+        stats.put("hit_ratio", total == 0 ? 0.0 : (double) (exact + near) / total);
+        synchronized (contexts) {
+            stats.put("contexts", contexts.size());
+            stats.put("entries", contexts.values().stream().mapToInt(Map::size).sum());
+        }
+        return stats;
+    }
+
+    private static void trim(Iterator<?> eldestFirst, int excess) {
+        for (int i = 0; i < excess && eldestFirst.hasNext(); i++) {
+            eldestFirst.next();
+            eldestFirst.remove();
+        }
+    }
+
+    /**
+     * dHash: shrink to 9x8 grayscale and record whether each pixel is brighter than its right neighbour.
+     */
+    static long differenceHash(BufferedImage image) {
+        BufferedImage small = new BufferedImage(HASH_WIDTH, HASH_HEIGHT, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D g = small.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(image, 0, 0, HASH_WIDTH, HASH_HEIGHT, null);
+        } finally {
+            g.dispose();
+        }
+
+        long hash = 0L;
+        for (int y = 0; y < HASH_HEIGHT; y++) {
+            for (int x = 0; x < HASH_WIDTH - 1; x++) {
+                int left = small.getRaster().getSample(x, y, 0);
+                int right = small.getRaster().getSample(x + 1, y, 0);
+                hash = (hash << 1) | (left > right ? 1L : 0L);
+            }
+        }
+        return hash;
+    }
+
+    private static String sha256Hex(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String context(byte[] referenceCrop, String rubric) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            if (referenceCrop != null) {
+                digest.update(referenceCrop);
+            }
+            digest.update((byte) 0);
+            digest.update(rubric.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.autograder.backend.service;
+
+import com.autograder.backend.entity.AssignmentStats;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * Percentiles read from the 101-bucket percentage histogram, checked against exact
+ * nearest-rank percentiles of the same scores. A bucket is one percentage point wide,
+ * so the interpolated value must fall in the bucket that holds the exact percentile.
+ */
+class AssignmentStatsServiceTest {
+
+    private static long[] histogram(double[] scores, double maxScore) {
+        long[] histogram = new long[AssignmentStats.BUCKETS];
+        for (double score : scores) {
+            histogram[AssignmentStatsService.bucket(score, maxScore)]++;
+        }
+        return histogram;
+    }
+
+    /** Nearest-rank percentile of the scores, as a percentage of maxScore. */
+    private static double exact(double[] scores, double maxScore, double p) {
+        double[] sorted = scores.clone();
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(p * sorted.length);
+        return 100 * sorted[Math.max(0, rank - 1)] / maxScore;
+    }
+
+    private static void assertMatchesExact(double[] scores, double maxScore) {
+        long[] histogram = histogram(scores, maxScore);
+        for (double p : new double[]{0.25, 0.50, 0.75, 0.90}) {
+            double floor = Math.floor(exact(scores, maxScore, p));
+            assertThat(AssignmentStatsService.percentile(histogram, p))
+                    .as("p%d", Math.round(p * 100))
+                    .isBetween(floor, Math.min(100.0, floor + 1.0));
+        }
+    }
+
+    @Test
+    void emptyAssignmentHasNoPercentiles() {
+        long[] histogram = new long[AssignmentStats.BUCKETS];
+        assertThat(AssignmentStatsService.percentile(histogram, 0.50)).isNull();
+        assertThat(AssignmentStatsService.percentile(histogram, 0.90)).isNull();
+    }
+
+    @Test
+    void singleResultLandsInItsOwnBucket() {
+        double[] scores = {36.7};
+        long[] histogram = histogram(scores, 50);
+        assertThat(AssignmentStatsService.percentile(histogram, 0.50)).isCloseTo(73.5, within(1e-9));
+        assertMatchesExact(scores, 50);
+    }
+
+    @Test
+    void fullMarksAreTheHundredthPercent() {
+        double[] scores = {50, 50, 50};
+        assertThat(AssignmentStatsService.percentile(histogram(scores, 50), 0.90)).isEqualTo(100.0);
+        assertThat(AssignmentStatsService.bucket(50, 50)).isEqualTo(100);
+        assertThat(AssignmentStatsService.bucket(-1, 50)).isZero();
+    }
+
+    @Test
+    void uniformWholePercentagesMatchExactPercentiles() {
+        double[] scores = IntStream.range(0, 100).asDoubleStream().toArray();
+        long[] histogram = histogram(scores, 100);
+        assertThat(AssignmentStatsService.percentile(histogram, 0.50)).isCloseTo(50.0, within(1e-9));
+        assertThat(AssignmentStatsService.percentile(histogram, 0.90)).isCloseTo(90.0, within(1e-9));
+        assertMatchesExact(scores, 100);
+    }
+
+    @Test
+    void bimodalScoresMatchExactPercentiles() {
+        double[] scores = new double[20];
+        Arrays.fill(scores, 0, 10, 10.0);
+        Arrays.fill(scores, 10, 20, 40.0);
+        assertMatchesExact(scores, 50);
+        assertThat(AssignmentStatsService.percentile(histogram(scores, 50), 0.90)).isCloseTo(80.8, within(1e-9));
+    }
+
+    @Test
+    void randomScoresMatchExactPercentiles() {
+        Random random = new Random(7);
+        double[] scores = new double[1000];
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] = Math.max(0, Math.min(50, random.nextGaussian() * 8 + 32));
+        }
+        assertMatchesExact(scores, 50);
+    }
+}
@@ -0,0 +1,208 @@
+package com.autograder.backend.service;
+
+import com.autograder.backend.entity.GradingJob;
+import com.autograder.backend.entity.GradingJob.PriorityClass;
+import com.autograder.backend.repository.GradingJobRepository;
+import com.autograder.backend.repository.GradingJobRepository.PendingFlow;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Stride scheduling in GradingJobScheduler, driven over an in-memory PENDING queue the way
+ * GradingJobWorker drives it: pick one job, claim it, repeat.
+ */
+class GradingJobSchedulerTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.now();
+
+    private final List<GradingJob> pending = new ArrayList<>();
+    private final AtomicLong ids = new AtomicLong();
+    private GradingJobRepository repository;
+
+    @BeforeEach
+    void fakeQueue() {
+        repository = mock(GradingJobRepository.class);
+        when(repository.findPendingFlows()).thenAnswer(invocation -> pendingFlows());
+        when(repository.findPendingByFlow(any(), any(), any())).thenAnswer(invocation -> {
+            PriorityClass priorityClass = invocation.getArgument(0);
+            String key = invocation.getArgument(1);
+            Pageable page = invocation.getArgument(2);
+            return pending.stream()
+                    .filter(job -> job.getPriorityClass() == priorityClass && job.getFairShareKey().equals(key))
+                    .sorted(Comparator.comparing(GradingJob::getCreatedAt))
+                    .limit(page.getPageSize())
+                    .toList();
+        });
+    }
+
+    private GradingJobScheduler scheduler(double agingSeconds, double maxAgingStrides) {
+        return new GradingJobScheduler(repository, new SimpleMeterRegistry(), 16, 4, 1, agingSeconds, maxAgingStrides);
+    }
+
+    private void enqueue(PriorityClass priorityClass, String key, int count, LocalDateTime createdAt) {
+        for (int i = 0; i < count; i++) {
+            GradingJob job = new GradingJob();
+            job.setId(ids.incrementAndGet());
+            job.setStatus(GradingJob.JobStatus.PENDING);
+            job.setPriorityClass(priorityClass);
+            job.setFairShareKey(key);
+            job.setCreatedAt(createdAt.plusNanos(i * 1000L));
+            pending.add(job);
+        }
+    }
+
+    /** Pick and claim {@code count} jobs one at a time; returns the fair-share key of each. */
+    private List<String> serve(GradingJobScheduler scheduler, int count) {
+        List<String> served = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            List<GradingJob> picked = scheduler.pick(1);
+            if (picked.isEmpty()) {
+                break;
+            }
+            GradingJob job = picked.get(0);
+            pending.remove(job);
+            scheduler.onClaimed(job);
+            served.add(job.getFairShareKey());
+        }
+        return served;
+    }
+
+    private List<PendingFlow> pendingFlows() {
+        Map<List<Object>, List<GradingJob>> flows = new LinkedHashMap<>();
+        for (GradingJob job : pending) {
+            flows.computeIfAbsent(List.of(job.getPriorityClass(), job.getFairShareKey()), k -> new ArrayList<>()).add(job);
+        }
+        List<PendingFlow> rows = new ArrayList<>();
+        flows.forEach((key, jobs) -> rows.add(new PendingFlow() {
+            @Override public PriorityClass getPriorityClass() { return (PriorityClass) key.get(0); }
+            @Override public String getFairShareKey() { return (String) key.get(1); }
+            @Override public long getDepth() { return jobs.size(); }
+            @Override public LocalDateTime getOldestCreatedAt() {
+                return jobs.stream().map(GradingJob::getCreatedAt).min(Comparator.naturalOrder()).orElse(null);
+            }
+        }));
+        return rows;
+    }
+
+    private static long count(List<String> served, String key) {
+        return served.stream().filter(key::equals).count();
+    }
+
+    private static int leading(List<String> served, String key) {
+        int n = 0;
+        while (n < served.size() && served.get(n).equals(key)) {
+            n++;
+        }
+        return n;
+    }
+
+    @Test
+    void classesShareInProportionToWeight() {
+        enqueue(PriorityClass.STANDARD, "standard", 1000, NOW);
+        enqueue(PriorityClass.BULK, "bulk", 1000, NOW);
+
+        List<String> served = serve(scheduler(0, 2), 500);
+
+        // weights 4:1 -> 400 standard, 100 bulk, give or take one round
+        assertThat(count(served, "standard")).isBetween(396L, 404L);
+        assertThat(count(served, "bulk")).isBetween(96L, 104L);
+    }
+
+    @Test
+    void flowsOfOneClassShareEqually() {
+        enqueue(PriorityClass.BULK, "assignment:1", 1000, NOW);
+        enqueue(PriorityClass.BULK, "assignment:2", 10, NOW);
+
+        List<String> served = serve(scheduler(0, 2), 20);
+
+        // the large backlog does not hold the small assignment hostage
+        assertThat(count(served, "assignment:2")).isEqualTo(10);
+    }
+
+    @Test
+    void bulkKeepsItsShareUnderSteadyInteractiveLoad() {
+        enqueue(PriorityClass.INTERACTIVE, "adhoc", 1000, NOW);
+        enqueue(PriorityClass.BULK, "bulk", 1000, NOW);
+
+        List<String> served = serve(scheduler(60, 2), 170);
+
+        // weights 16:1 -> one bulk job in every 17
+        assertThat(count(served, "bulk")).isBetween(9L, 11L);
+    }
+
+    @Test
+    void agingCreditIsCappedAtMaxAgingStrides() {
+        enqueue(PriorityClass.BULK, "backlog", 20, NOW.minusDays(1));
+        enqueue(PriorityClass.INTERACTIVE, "adhoc", 100, NOW);
+
+        List<String> served = serve(scheduler(60, 2), 40);
+
+        // a day-old head is worth at most 2 bulk charges: at most 2 (3 on a tie) backlog jobs jump the queue
+        assertThat(leading(served, "backlog")).isBetween(1, 3);
+    }
+
+    @Test
+    void uncappedAgingWouldLetAnOldBacklogStarveInteractiveWork() {
+        enqueue(PriorityClass.BULK, "backlog", 20, NOW.minusDays(1));
+        enqueue(PriorityClass.INTERACTIVE, "adhoc", 100, NOW);
+
+        List<String> served = serve(scheduler(60, 1_000_000), 40);
+
+        assertThat(leading(served, "backlog")).isEqualTo(20);
+    }
+
+    @Test
+    void agingOnlyCountsTheCurrentHead() {
+        // one old job at the head of an otherwise fresh backlog
+        enqueue(PriorityClass.BULK, "backlog", 1, NOW.minusDays(1));
+        enqueue(PriorityClass.BULK, "backlog", 20, NOW);
+        enqueue(PriorityClass.INTERACTIVE, "adhoc", 100, NOW);
+
+        List<String> served = serve(scheduler(60, 2), 40);
+
+        // once the old head is served the flow ages from its new, fresh head
+        assertThat(count(served, "backlog")).isLessThanOrEqualTo(5);
+    }
+
+    @Test
+    void idleFlowsDoNotBankCredit() {
+        GradingJobScheduler scheduler = scheduler(0, 2);
+        enqueue(PriorityClass.STANDARD, "busy", 1000, NOW);
+        enqueue(PriorityClass.STANDARD, "returning", 2, NOW);
+        serve(scheduler, 100); // "returning" drains early, then sits idle while "busy" is served
+
+        enqueue(PriorityClass.STANDARD, "returning", 100, NOW.plusSeconds(1));
+        List<String> served = serve(scheduler, 20);
+
+        // it rejoins at the current pass and alternates, instead of replaying ~98 missed turns
+        assertThat(count(served, "returning")).isBetween(9L, 11L);
+        assertThat(leading(served, "returning")).isLessThanOrEqualTo(2);
+    }
+
+    @Test
+    void newFlowJoinsAtTheCurrentPass() {
+        GradingJobScheduler scheduler = scheduler(0, 2);
+        enqueue(PriorityClass.STANDARD, "first", 1000, NOW);
+        serve(scheduler, 100);
+
+        enqueue(PriorityClass.STANDARD, "second", 100, NOW.plusSeconds(1));
+        List<String> served = serve(scheduler, 20);
+
+        assertThat(count(served, "second")).isBetween(9L, 11L);
+    }
+}
@@ -0,0 +1,279 @@
+package com.autograder.backend.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Circuit breaker, bulkhead, hedging and retry behaviour of ResiliencePolicy.
+ * Timings are a few tens of milliseconds of real time; every wait is bounded.
+ */
+class ResiliencePolicyTest {
+
+    private static final Duration WAIT = Duration.ofSeconds(5);
+    private static final long OPEN_MS = 100;
+
+    private static ResiliencePolicy.Settings settings() {
+        ResiliencePolicy.Settings settings = new ResiliencePolicy.Settings();
+        settings.setTimeoutMs(5_000);
+        settings.setMaxConcurrentCalls(0);
+        settings.setMaxRetries(0);
+        settings.setInitialBackoffMs(1);
+        settings.setMaxBackoffMs(5);
+        settings.setWindowSize(4);
+        settings.setMinimumCalls(4);
+        settings.setFailureRateThreshold(50);
+        settings.setOpenDurationMs(OPEN_MS);
+        settings.setHalfOpenCalls(2);
+        return settings;
+    }
+
+    private static Mono<String> failure() {
+        return Mono.error(new IllegalStateException("boom"));
+    }
+
+    private static void trip(ResiliencePolicy policy) {
+        for (int i = 0; i < 4; i++) {
+            assertThatThrownBy(() -> policy.execute(ResiliencePolicyTest::failure).block(WAIT))
+                    .isInstanceOf(IllegalStateException.class);
+        }
+        assertThat(policy.getState()).isEqualTo(ResiliencePolicy.State.OPEN);
+    }
+
+    private static void awaitOpenDuration() throws InterruptedException {
+        Thread.sleep(OPEN_MS + 50);
+    }
+
+    /** The slot is handed on in doFinally, which may run just after block() returns. */
+    private static void awaitSize(List<?> list, int size) {
+        long deadline = System.nanoTime() + WAIT.toNanos();
+        while (list.size() < size && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+    }
+
+    @Test
+    void closedOpensOnFailureRateThenHalfOpenProbesClose() throws InterruptedException {
+        ResiliencePolicy policy = new ResiliencePolicy("test", settings());
+        assertThat(policy.getState()).isEqualTo(ResiliencePolicy.State.CLOSED);
+
+        trip(policy);
+
+        AtomicInteger invoked = new AtomicInteger();
+        assertThatThrownBy(() -> policy.execute(() -> {
+            invoked.incrementAndGet();
+            return Mono.just("x");
+        }).block(WAIT)).isInstanceOf(MLServiceUnavailableException.class);
+        assertThat(invoked).hasValue(0);
+
+        awaitOpenDuration();
+        assertThat(policy.execute(() -> Mono.just("probe-1")).block(WAIT)).isEqualTo("probe-1");
+        assertThat(policy.getState()).isEqualTo(ResiliencePolicy.State.HALF_OPEN);
+        assertThat(policy.execute(() -> Mono.just("probe-2")).block(WAIT)).isEqualTo("probe-2");
+        assertThat(policy.getState()).isEqualTo(ResiliencePolicy.State.CLOSED);
+    }
+
+    @Test
+    void stayClosedBelowMinimumCalls() {
+        ResiliencePolicy policy = new ResiliencePolicy("test", settings());
+        for (int i = 0; i < 3; i++) {
+            assertThatThrownBy(() -> policy.execute(ResiliencePolicyTest::failure).block(WAIT))
+                    .isInstanceOf(IllegalStateException.class);
+        }
+        assertThat(policy.getState()).isEqualTo(ResiliencePolicy.State.CLOSED);
+    }
+
+    @Test
+    void halfOpenLetsOnlyConfiguredProbesThrough() throws InterruptedException {
+        ResiliencePolicy policy = new ResiliencePolicy("test", settings());
+        trip(policy);
+        awaitOpenDuration();
+
+        Sinks.One<String> first = Sinks.one();
+        Sinks.One<String> second = Sinks.one();
+        Mono<String> probe1 = policy.execute(first::asMono).cache();
+        Mono<String> probe2 = policy.execute(second::asMono).cache();
+        probe1.subscribe();
+        probe2.subscribe();
+
+        assertThatThrownBy(() -> policy.execute(() -> Mono.just("third")).block(WAIT))
+                .isInstanceOf(MLServiceUnavailableException.class);
+
+        first.tryEmitValue("a");
+        second.tryEmitValue("b");
+        assertThat(probe1.block(WAIT)).isEqualTo("a");
+        assertThat(probe2.block(WAIT)).isEqualTo("b");
+        assertThat(policy.getState()).isEqualTo(ResiliencePolicy.State.CLOSED);
+    }
+
+    @Test
+    void failedProbeReopens() throws InterruptedException {
+        ResiliencePolicy policy = new ResiliencePolicy("test", settings());
+        trip(policy);
+        awaitOpenDuration();
+
+        assertThatThrownBy(() -> policy.execute(ResiliencePolicyTest::failure).block(WAIT))
+                .isInstanceOf(IllegalStateException.class);
+        assertThat(policy.getState()).isEqualTo(ResiliencePolicy.State.OPEN);
+    }
+
+    @Test
+    void cancelledProbeKeepsItsPermit() throws InterruptedException {
+        ResiliencePolicy.Settings settings = settings();
+        settings.setHalfOpenCalls(1);
+        ResiliencePolicy policy = new ResiliencePolicy("test", settings);
+        trip(policy);
+        awaitOpenDuration();
+
+        AtomicBoolean sent = new AtomicBoolean();
+        Disposable probe = policy.execute(() -> Mono.<String>never().doOnSubscribe(s -> sent.set(true))).subscribe();
+        assertThat(sent).isTrue();
+        probe.dispose();
+
+        // The probe may have reached the service, so no second probe goes out; with no verdict the circuit reopens
+        assertThat(policy.getState()).isEqualTo(ResiliencePolicy.State.OPEN);
+        assertThatThrownBy(() -> policy.execute(() -> Mono.just("x")).block(WAIT))
+                .isInstanceOf(MLServiceUnavailableException.class);
+    }
+
+    @Test
+    void bulkheadServesWaitersInArrivalOrder() {
+        ResiliencePolicy.Settings settings = settings();
+        settings.setMaxConcurrentCalls(1);
+        settings.setMaxWaitMs(5_000);
+        ResiliencePolicy policy = new ResiliencePolicy("test", settings);
+
+        List<Integer> started = new CopyOnWriteArrayList<>();
+        List<Sinks.One<String>> answers = List.of(Sinks.one(), Sinks.one(), Sinks.one());
+        List<Mono<String>> calls = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            int id = i;
+            Mono<String> call = policy.execute(() -> {
+                started.add(id);
+                return answers.get(id).asMono();
+            }).cache();
+            call.subscribe();
+            calls.add(call);
+        }
+
+        assertThat(started).containsExactly(0);
+        assertThat(policy.stats()).containsEntry("waiting", 2);
+
+        answers.get(0).tryEmitValue("0");
+        assertThat(calls.get(0).block(WAIT)).isEqualTo("0");
+        awaitSize(started, 2);
+        assertThat(started).containsExactly(0, 1);
+
+        answers.get(1).tryEmitValue("1");
+        assertThat(calls.get(1).block(WAIT)).isEqualTo("1");
+        awaitSize(started, 3);
+        assertThat(started).containsExactly(0, 1, 2);
+
+        answers.get(2).tryEmitValue("2");
+        assertThat(calls.get(2).block(WAIT)).isEqualTo("2");
+        assertThat(policy.stats()).containsEntry("waiting", 0);
+    }
+
+    @Test
+    void bulkheadWaitTimesOut() {
+        ResiliencePolicy.Settings settings = settings();
+        settings.setMaxConcurrentCalls(1);
+        settings.setMaxWaitMs(50);
+        ResiliencePolicy policy = new ResiliencePolicy("test", settings);
+
+        Disposable holder = policy.execute(Mono::<String>never).subscribe();
+        AtomicInteger invoked = new AtomicInteger();
+        assertThatThrownBy(() -> policy.execute(() -> {
+            invoked.incrementAndGet();
+            return Mono.just("late");
+        }).block(WAIT))
+                .isInstanceOf(MLServiceUnavailableException.class)
+                .hasMessageContaining("no bulkhead slot");
+        assertThat(invoked).hasValue(0);
+        assertThat(policy.stats()).containsEntry("waiting", 0);
+
+        holder.dispose();
+        assertThat(policy.execute(() -> Mono.just("free")).block(WAIT)).isEqualTo("free");
+    }
+
+    @Test
+    void hedgeWinsAndLoserIsCancelled() {
+        ResiliencePolicy.Settings settings = settings();
+        settings.setHedgeDelayMs(30);
+        ResiliencePolicy policy = new ResiliencePolicy("test", settings);
+
+        AtomicInteger attempts = new AtomicInteger();
+        AtomicBoolean loserCancelled = new AtomicBoolean();
+        String result = policy.execute(() -> attempts.getAndIncrement() == 0
+                ? Mono.<String>never().doOnCancel(() -> loserCancelled.set(true))
+                : Mono.just("hedge")).block(WAIT);
+
+        assertThat(result).isEqualTo("hedge");
+        assertThat(attempts).hasValue(2);
+        assertThat(loserCancelled).isTrue();
+        assertThat(policy.getInFlight()).isZero();
+        assertThat(policy.getState()).isEqualTo(ResiliencePolicy.State.CLOSED);
+    }
+
+    @Test
+    void hedgeTakesARetryPermit() {
+        ResiliencePolicy.Settings settings = settings();
+        settings.setHedgeDelayMs(30);
+        AtomicInteger permits = new AtomicInteger();
+        ResiliencePolicy policy = new ResiliencePolicy("test", settings,
+                () -> Mono.fromRunnable(permits::incrementAndGet));
+
+        AtomicInteger attempts = new AtomicInteger();
+        policy.execute(() -> attempts.getAndIncrement() == 0 ? Mono.<String>never() : Mono.just("hedge")).block(WAIT);
+
+        assertThat(permits).hasValue(1);
+    }
+
+    @Test
+    void clientErrorsAreNotRetriedAndDoNotTrip() {
+        ResiliencePolicy.Settings settings = settings();
+        settings.setMaxRetries(3);
+        ResiliencePolicy policy = new ResiliencePolicy("test", settings);
+
+        AtomicInteger attempts = new AtomicInteger();
+        for (int i = 0; i < 4; i++) {
+            assertThatThrownBy(() -> policy.execute(() -> {
+                attempts.incrementAndGet();
+                return Mono.<String>error(WebClientResponseException.create(400, "Bad Request", HttpHeaders.EMPTY, new byte[0], null));
+            }).block(WAIT)).isInstanceOf(WebClientResponseException.BadRequest.class);
+        }
+        assertThat(attempts).hasValue(4);
+        assertThat(policy.getState()).isEqualTo(ResiliencePolicy.State.CLOSED);
+    }
+
+    @Test
+    void serverErrorsAreRetriedWithAPermitEach() {
+        ResiliencePolicy.Settings settings = settings();
+        settings.setMaxRetries(2);
+        settings.setMinimumCalls(100);
+        AtomicInteger permits = new AtomicInteger();
+        ResiliencePolicy policy = new ResiliencePolicy("test", settings,
+                () -> Mono.fromRunnable(permits::incrementAndGet));
+
+        AtomicInteger attempts = new AtomicInteger();
+        String result = policy.execute(() -> attempts.incrementAndGet() < 3
+                ? Mono.<String>error(WebClientResponseException.create(503, "Unavailable", HttpHeaders.EMPTY, new byte[0], null))
+                : Mono.just("ok")).block(WAIT);
+
+        assertThat(result).isEqualTo("ok");
+        assertThat(attempts).hasValue(3);
+        assertThat(permits).hasValue(2);
+    }
+}
@@ -94,7 +94,7 @@ class BatchZoneData(BaseModel):
     image_b64: str
     reference_text: Optional[str] = None
     reference_image_b64: Optional[str] = None
-    max_score: float = 10.0
+    max_score: Optional[float] = None  # None: taken from the rubric
 
 class BatchVisionRequest(BaseModel):
     zones: Dict[str, BatchZoneData]
@@ -329,7 +329,9 @@ async def grade_batch_vision(request: BatchVisionRequest):
             parts.append({"text": f"INSTRUCTOR REFERENCE TEXT: {data.reference_text}"})
 
         parts.append({
-            "text": f"Evaluate results for Zone '{zone_id}'. Max score: {data.max_score}."
+            "text": f"Evaluate results for Zone '{zone_id}'. "
+                    + (f"Max score: {data.max_score}." if data.max_score is not None
+                       else "Take the max score from the rubric.")
         })
 
     # Final Formatting Push